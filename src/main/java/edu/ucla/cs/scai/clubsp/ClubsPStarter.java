@@ -15,6 +15,7 @@
  */
 package edu.ucla.cs.scai.clubsp;
 
+import edu.ucla.cs.scai.clubsp.commons.ExecutionOptions;
 import edu.ucla.cs.scai.clubsp.messages.StartClusteringRequest;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
@@ -25,8 +26,12 @@ import java.net.Socket;
  */
 public class ClubsPStarter {
 
+    //args[0] is the ip of the master
+    //args[1] is the port of the master
+    //args[2] is the id of the data set
+    //the following args are optional, in the form name=value (e.g., scaleFactor=10 or weighted=true)
     public static void main(String args[]) {
-        if (args == null || args.length != 3) {
+        if (args == null || args.length < 3) {
             args = new String[]{"localhost", "9192", "6250000p_2d_16c_0.02n.data"};
         }
         int port;
@@ -37,10 +42,27 @@ public class ClubsPStarter {
             System.out.println("Starter terminated");
             return;
         }
+        double scaleFactor = 1;
+        ExecutionOptions options = new ExecutionOptions();
+        for (int i = 3; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            String value = option.length > 1 ? option[1] : "true";
+            try {
+                if (option[0].equals("scaleFactor")) {
+                    scaleFactor = Double.parseDouble(value);
+                } else {
+                    options.setOption(option[0], value);
+                }
+            } catch (Exception e) {
+                System.out.println("Option " + args[i] + " not valid");
+                System.out.println("Starter terminated");
+                return;
+            }
+        }
 
         try (Socket s = new Socket(args[0], port);
                 ObjectOutputStream out = new ObjectOutputStream(s.getOutputStream());) {
-            out.writeObject(new StartClusteringRequest(args[2]));
+            out.writeObject(new StartClusteringRequest(args[2], scaleFactor, options));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp;
+
+import edu.ucla.cs.scai.clubsp.commons.ColumnarDataSetFile;
+import edu.ucla.cs.scai.clubsp.commons.Range;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.StringTokenizer;
+
+/**
+ * Converts a text data set (one point per line, coordinates separated by
+ * commas, spaces or tabs) into the binary columnar format loaded by the
+ * workers. The text file is read twice: the first pass computes size and
+ * domain, the second one fills the columns.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class DataSetConverter {
+
+    public static void convert(String inFileName, String outFileName) throws IOException {
+        int dimensionality = 0;
+        int size = 0;
+        int[] inf = null;
+        int[] sup = null;
+        try (BufferedReader in = new BufferedReader(new FileReader(inFileName))) {
+            String l = in.readLine();
+            if (l != null && l.trim().length() > 0) {
+                dimensionality = new StringTokenizer(l, ", \t").countTokens();
+            }
+            inf = new int[dimensionality];
+            sup = new int[dimensionality];
+            for (int i = 0; i < dimensionality; i++) {
+                inf[i] = Integer.MAX_VALUE;
+                sup[i] = Integer.MIN_VALUE;
+            }
+            while (l != null && l.trim().length() > 0) {
+                StringTokenizer st = new StringTokenizer(l, ", \t");
+                for (int i = 0; i < dimensionality; i++) {
+                    int v = Integer.parseInt(st.nextToken());
+                    inf[i] = Math.min(v, inf[i]);
+                    sup[i] = Math.max(v, sup[i]);
+                }
+                size++;
+                l = in.readLine();
+            }
+        }
+        try (ColumnarDataSetFile out = ColumnarDataSetFile.create(outFileName, dimensionality, size, new Range(inf, sup));
+                BufferedReader in = new BufferedReader(new FileReader(inFileName))) {
+            IntBuffer[] columns = new IntBuffer[dimensionality];
+            for (int i = 0; i < dimensionality; i++) {
+                columns[i] = out.mapColumn(i);
+            }
+            for (int j = 0; j < size; j++) {
+                StringTokenizer st = new StringTokenizer(in.readLine(), ", \t");
+                for (int i = 0; i < dimensionality; i++) {
+                    columns[i].put(j, Integer.parseInt(st.nextToken()));
+                }
+            }
+        }
+    }
+
+    //args[0] is the text data set
+    //args[1] is the columnar file to be created
+    public static void main(String args[]) {
+        if (args == null || args.length != 2) {
+            System.out.println("Parameters needed: textDataSet columnarDataSet");
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            convert(args[0], args[1]);
+            System.out.println("Converted " + args[0] + " into " + args[1] + " in " + (System.currentTimeMillis() - start) + " msec");
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary columnar representation of a data set. The file starts with a header
+ * (magic number, version, dimensionality, number of points, inf and sup of the
+ * domain) followed by one column of int coordinates for every dimension. All
+ * the values are stored in little endian order, and the columns are accessed
+ * by memory-mapping the file.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ColumnarDataSetFile implements AutoCloseable {
+
+    public static final int MAGIC = 0x434c4250; //"CLBP"
+    public static final int VERSION = 1;
+
+    FileChannel channel;
+    boolean writable;
+    int dimensionality;
+    int size;
+    Range domain;
+    long dataOffset;
+
+    private ColumnarDataSetFile(FileChannel channel, boolean writable) {
+        this.channel = channel;
+        this.writable = writable;
+    }
+
+    private static long headerSize(int dimensionality) {
+        return 4L * (4 + 2 * dimensionality);
+    }
+
+    //returns true if the file starts with the magic number of the columnar format
+    public static boolean isColumnar(String fileName) throws IOException {
+        try (FileChannel c = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (c.size() < 4) {
+                return false;
+            }
+            ByteBuffer b = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            while (b.hasRemaining() && c.read(b) >= 0) {
+            }
+            b.flip();
+            return b.getInt() == MAGIC;
+        }
+    }
+
+    public static ColumnarDataSetFile open(String fileName) throws IOException {
+        FileChannel c = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        ColumnarDataSetFile res = new ColumnarDataSetFile(c, false);
+        try {
+            res.readHeader();
+        } catch (IOException e) {
+            c.close();
+            throw e;
+        }
+        return res;
+    }
+
+    //creates a new file with the given header - the columns must be filled through mapColumn
+    public static ColumnarDataSetFile create(String fileName, int dimensionality, int size, Range domain) throws IOException {
+        FileChannel c = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        ColumnarDataSetFile res = new ColumnarDataSetFile(c, true);
+        res.dimensionality = dimensionality;
+        res.size = size;
+        res.domain = domain;
+        res.dataOffset = headerSize(dimensionality);
+        try {
+            res.writeHeader();
+        } catch (IOException e) {
+            c.close();
+            throw e;
+        }
+        return res;
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), headerSize(0))).order(ByteOrder.LITTLE_ENDIAN);
+        if (b.remaining() < headerSize(0) || b.getInt() != MAGIC) {
+            throw new IOException("Not a columnar data set file");
+        }
+        int version = b.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported columnar data set version " + version);
+        }
+        dimensionality = b.getInt();
+        size = b.getInt();
+        dataOffset = headerSize(dimensionality);
+        if (dimensionality < 0 || size < 0 || channel.size() < dataOffset + 4L * size * dimensionality) {
+            throw new IOException("Truncated columnar data set file");
+        }
+        IntBuffer h = channel.map(FileChannel.MapMode.READ_ONLY, headerSize(0), 8L * dimensionality).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        int[] inf = new int[dimensionality];
+        int[] sup = new int[dimensionality];
+        h.get(inf);
+        h.get(sup);
+        domain = new Range(inf, sup);
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer b = ByteBuffer.allocate((int) dataOffset).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(MAGIC);
+        b.putInt(VERSION);
+        b.putInt(dimensionality);
+        b.putInt(size);
+        for (int i = 0; i < dimensionality; i++) {
+            b.putInt(domain.inf[i]);
+        }
+        for (int i = 0; i < dimensionality; i++) {
+            b.putInt(domain.sup[i]);
+        }
+        b.flip();
+        long position = 0;
+        while (b.hasRemaining()) {
+            position += channel.write(b, position);
+        }
+    }
+
+    //maps the column of the i-th dimension
+    public IntBuffer mapColumn(int i) throws IOException {
+        return mapColumn(i, 0, size);
+    }
+
+    //maps the values of the i-th column with index in [from, from+length)
+    //the mapping remains valid after the file is closed
+    public IntBuffer mapColumn(int i, int from, int length) throws IOException {
+        FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+        return channel.map(mode, dataOffset + 4L * size * i + 4L * from, 4L * length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    public int getDimensionality() {
+        return dimensionality;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Range getDomain() {
+        return domain;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The sorted distinct values of the coordinates of a data set, for every
+ * dimension. When a dictionary is used, the bins of the marginals correspond
+ * to the codes of the values, i.e., their index in the dictionary, rather than
+ * to all the integers of the range, so that the width of the marginals depends
+ * on the number of distinct values.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class CoordinateDictionary implements Serializable {
+
+    int[][] values;
+
+    //every array of values must be sorted and without duplicates
+    public CoordinateDictionary(int[][] values) {
+        this.values = values;
+    }
+
+    //returns the dictionary of the values of the given columns - the arrays are sorted in place
+    public static CoordinateDictionary fromColumns(int[][] columns) {
+        int[][] values = new int[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            int[] c = columns[i];
+            Arrays.sort(c);
+            int n = 0;
+            for (int j = 0; j < c.length; j++) {
+                if (n == 0 || c[j] != c[n - 1]) {
+                    c[n++] = c[j];
+                }
+            }
+            values[i] = Arrays.copyOf(c, n);
+        }
+        return new CoordinateDictionary(values);
+    }
+
+    //returns the dictionary containing the values of this and of the other dictionary
+    public CoordinateDictionary merge(CoordinateDictionary other) {
+        int[][] res = new int[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            int[] a = values[i];
+            int[] b = other.values[i];
+            int[] m = new int[a.length + b.length];
+            int ia = 0, ib = 0, n = 0;
+            while (ia < a.length || ib < b.length) {
+                int v;
+                if (ib == b.length || ia < a.length && a[ia] <= b[ib]) {
+                    v = a[ia++];
+                } else {
+                    v = b[ib++];
+                }
+                if (n == 0 || m[n - 1] != v) {
+                    m[n++] = v;
+                }
+            }
+            res[i] = Arrays.copyOf(m, n);
+        }
+        return new CoordinateDictionary(res);
+    }
+
+    public int getDimensionality() {
+        return values.length;
+    }
+
+    public int getSize(int dimension) {
+        return values[dimension].length;
+    }
+
+    public int getValue(int dimension, int code) {
+        return values[dimension][code];
+    }
+
+    //the code of a value contained in the dictionary
+    public int getCode(int dimension, int value) {
+        return Arrays.binarySearch(values[dimension], value);
+    }
+
+    //the code of the smallest value greater than or equal to v
+    public int getFirstCode(int dimension, int v) {
+        int c = Arrays.binarySearch(values[dimension], v);
+        return c >= 0 ? c : -c - 1;
+    }
+
+    //the code of the largest value less than or equal to v
+    public int getLastCode(int dimension, int v) {
+        int c = Arrays.binarySearch(values[dimension], v);
+        return c >= 0 ? c : -c - 2;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CoordinateDictionary{sizes=[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(values[i].length);
+        }
+        return sb.append("]}").toString();
+    }
+}
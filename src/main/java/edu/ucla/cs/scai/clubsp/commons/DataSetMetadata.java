@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Global information about a data set, computed by an execution with a given
+ * scale factor: number of points, dimensionality, domain and, optionally, the
+ * linear and squared sums of the coordinates of all the points. It is stored as
+ * a properties file.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class DataSetMetadata {
+
+    public String dataSetId;
+    public double scaleFactor;
+    public int size;
+    public int dimensionality;
+    public Range domain;
+    public double[] LS, SS; //null if not available
+
+    public DataSetMetadata(String dataSetId, double scaleFactor, int size, Range domain, double[] LS, double[] SS) {
+        this.dataSetId = dataSetId;
+        this.scaleFactor = scaleFactor;
+        this.size = size;
+        this.dimensionality = domain.getDimensionality();
+        this.domain = domain;
+        this.LS = LS;
+        this.SS = SS;
+    }
+
+    public boolean hasRootStatistics() {
+        return LS != null && SS != null;
+    }
+
+    //returns the metadata for a different scale factor, if they can be derived from these ones, or null
+    //since the scaling is monotone, the domain can be derived from the original coordinates,
+    //while the linear and squared sums cannot
+    public DataSetMetadata getScaled(double newScaleFactor) {
+        if (newScaleFactor == scaleFactor) {
+            return this;
+        }
+        if (scaleFactor != 1) {
+            return null;
+        }
+        int[] inf = new int[dimensionality];
+        int[] sup = new int[dimensionality];
+        for (int i = 0; i < dimensionality; i++) {
+            if (domain.inf[i] < 0) { //with scale factor 1, negative coordinates were changed by the scaling
+                return null;
+            }
+            inf[i] = Utils.scaleCoordinate(domain.inf[i], newScaleFactor);
+            sup[i] = Utils.scaleCoordinate(domain.sup[i], newScaleFactor);
+        }
+        return new DataSetMetadata(dataSetId, newScaleFactor, size, new Range(inf, sup), null, null);
+    }
+
+    public static DataSetMetadata read(File file) throws IOException {
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            p.load(in);
+        }
+        try {
+            int[] inf = parseInts(p.getProperty("inf"));
+            int[] sup = parseInts(p.getProperty("sup"));
+            if (inf.length != sup.length || inf.length != Integer.parseInt(p.getProperty("dimensionality"))) {
+                throw new IOException("Inconsistent dimensionality in " + file);
+            }
+            return new DataSetMetadata(p.getProperty("dataSetId"), Double.parseDouble(p.getProperty("scaleFactor")),
+                    Integer.parseInt(p.getProperty("size")), new Range(inf, sup),
+                    parseDoubles(p.getProperty("LS")), parseDoubles(p.getProperty("SS")));
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IOException("Malformed data set metadata " + file, e);
+        }
+    }
+
+    public void write(File file) throws IOException {
+        Properties p = new Properties();
+        p.setProperty("dataSetId", dataSetId);
+        p.setProperty("scaleFactor", Double.toString(scaleFactor));
+        p.setProperty("size", Integer.toString(size));
+        p.setProperty("dimensionality", Integer.toString(dimensionality));
+        p.setProperty("inf", format(domain.inf));
+        p.setProperty("sup", format(domain.sup));
+        if (hasRootStatistics()) {
+            p.setProperty("LS", format(LS));
+            p.setProperty("SS", format(SS));
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            p.store(out, "ClubsP data set metadata");
+        }
+    }
+
+    private static String format(int[] v) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < v.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(v[i]);
+        }
+        return sb.toString();
+    }
+
+    private static String format(double[] v) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < v.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(v[i]);
+        }
+        return sb.toString();
+    }
+
+    private static int[] parseInts(String s) {
+        if (s.isEmpty()) {
+            return new int[0];
+        }
+        String[] tokens = s.split(",");
+        int[] res = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            res[i] = Integer.parseInt(tokens[i].trim());
+        }
+        return res;
+    }
+
+    private static double[] parseDoubles(String s) {
+        if (s == null) {
+            return null;
+        }
+        if (s.isEmpty()) {
+            return new double[0];
+        }
+        String[] tokens = s.split(",");
+        double[] res = new double[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            res[i] = Double.parseDouble(tokens[i].trim());
+        }
+        return res;
+    }
+}
@@ -1,48 +0,0 @@
-/*
- * Copyright 2014 ScAi, CSD, UCLA.
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *      http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package edu.ucla.cs.scai.clubsp.commons;
-
-/**
- *
- * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
- */
-public class DataSetPoint {
-
-    public int[] p;
-    public int filePosition;
-
-    public DataSetPoint(int[] p, int filePosition) {
-        this.p = p;
-        this.filePosition = filePosition;
-    }
-
-    public int[] getP() {
-        return p;
-    }
-
-    public void setP(int[] p) {
-        this.p = p;
-    }
-
-    public int getFilePosition() {
-        return filePosition;
-    }
-
-    public void setFilePosition(int filePosition) {
-        this.filePosition = filePosition;
-    }
-
-}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import java.io.Serializable;
+
+/**
+ * Optional parameters of a clustering execution, specified as name=value when
+ * the execution is started and forwarded by the master to the workers.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ExecutionOptions implements Serializable {
+
+    public boolean weighted = false; //identical points are loaded as one point with a weight
+    public boolean dictionary = false; //the marginals have one bin for every distinct value of the coordinates
+    public int marginalMemory = 0; //MB of local marginals kept by every worker, 0 means no limit
+    public int approximateWidth = 0; //the best split is approximated on the marginals with more bins, 0 means always exact
+    public int parallelBlocks = 1; //the maximum number of blocks evaluated at the same time during the divisive step
+    public boolean levelSynchronous = false; //the divisive step processes all the leaves in rounds, instead of one block at a time
+    public boolean speculativeEvaluation = false; //the workers exchange the marginals of the new blocks as soon as they are created
+
+    public void setOption(String name, String value) throws Exception {
+        switch (name) {
+            case "weighted":
+                weighted = Boolean.parseBoolean(value);
+                break;
+            case "dictionary":
+                dictionary = Boolean.parseBoolean(value);
+                break;
+            case "marginalMemory":
+                marginalMemory = Integer.parseInt(value);
+                break;
+            case "approximateWidth":
+                approximateWidth = Integer.parseInt(value);
+                break;
+            case "parallelBlocks":
+                parallelBlocks = Integer.parseInt(value);
+                break;
+            case "levelSynchronous":
+                levelSynchronous = Boolean.parseBoolean(value);
+                break;
+            case "speculativeEvaluation":
+                speculativeEvaluation = Boolean.parseBoolean(value);
+                break;
+            default:
+                throw new Exception("Unknown option " + name);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionOptions{" + "weighted=" + weighted + ", dictionary=" + dictionary + ", marginalMemory=" + marginalMemory + ", approximateWidth=" + approximateWidth + ", parallelBlocks=" + parallelBlocks + ", levelSynchronous=" + levelSynchronous + ", speculativeEvaluation=" + speculativeEvaluation + '}';
+    }
+}
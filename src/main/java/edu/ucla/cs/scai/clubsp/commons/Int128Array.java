@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Array of signed 128-bit integers, each one stored as a pair of longs (the
+ * high word, signed, and the low word, unsigned). It is used for the exact
+ * accumulation of the squares of the coordinates, which can overflow a long.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class Int128Array implements Serializable {
+
+    private static final double TWO_TO_64 = 18446744073709551616.0;
+
+    public long[] hi;
+    public long[] lo;
+
+    public Int128Array(int length) {
+        hi = new long[length];
+        lo = new long[length];
+    }
+
+    private Int128Array(long[] hi, long[] lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    public int length() {
+        return lo.length;
+    }
+
+    //compares two longs as unsigned values
+    private static boolean unsignedLess(long a, long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+
+    //adds the 128-bit value vHi:vLo to the i-th element
+    public void add(int i, long vHi, long vLo) {
+        long l = lo[i] + vLo;
+        hi[i] += vHi + (unsignedLess(l, vLo) ? 1 : 0);
+        lo[i] = l;
+    }
+
+    //subtracts the 128-bit value vHi:vLo from the i-th element
+    public void sub(int i, long vHi, long vLo) {
+        long l = lo[i] - vLo;
+        hi[i] -= vHi + (unsignedLess(lo[i], vLo) ? 1 : 0);
+        lo[i] = l;
+    }
+
+    public void add(int i, long v) {
+        add(i, v >> 63, v);
+    }
+
+    //adds a*b, where a and b are non-negative
+    public void addProduct(int i, long a, long b) {
+        long aHi = a >>> 32, aLo = a & 0xffffffffL;
+        long bHi = b >>> 32, bLo = b & 0xffffffffL;
+        long lolo = aLo * bLo;
+        long mid1 = aHi * bLo;
+        long mid2 = aLo * bHi;
+        long carry = ((lolo >>> 32) + (mid1 & 0xffffffffL) + (mid2 & 0xffffffffL)) >>> 32;
+        long productHi = aHi * bHi + (mid1 >>> 32) + (mid2 >>> 32) + carry;
+        add(i, productHi, a * b);
+    }
+
+    public void add(Int128Array m) {
+        for (int i = 0; i < lo.length; i++) {
+            add(i, m.hi[i], m.lo[i]);
+        }
+    }
+
+    public void sub(Int128Array m) {
+        for (int i = 0; i < lo.length; i++) {
+            sub(i, m.hi[i], m.lo[i]);
+        }
+    }
+
+    //adds the j-th element of m to the i-th element
+    public void add(int i, Int128Array m, int j) {
+        add(i, m.hi[j], m.lo[j]);
+    }
+
+    //returns the elements with index in [from, to)
+    public Int128Array copyOfRange(int from, int to) {
+        return new Int128Array(Arrays.copyOfRange(hi, from, to), Arrays.copyOfRange(lo, from, to));
+    }
+
+    public Int128Array getCopy() {
+        return new Int128Array(hi.clone(), lo.clone());
+    }
+
+    public double doubleValue(int i) {
+        long h = hi[i];
+        long l = lo[i];
+        if (h < 0) { //the absolute value is converted, to avoid the cancellation between the two words
+            h = ~h + (l == 0 ? 1 : 0);
+            l = -l;
+            return -toDouble(h, l);
+        }
+        return toDouble(h, l);
+    }
+
+    private static double toDouble(long h, long l) {
+        double unsignedLo = l >= 0 ? l : (l >>> 1) * 2.0 + (l & 1);
+        return h * TWO_TO_64 + unsignedLo;
+    }
+
+    public double[] toDoubleArray() {
+        double[] res = new double[lo.length];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = doubleValue(i);
+        }
+        return res;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toDoubleArray());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import java.util.Arrays;
+
+/**
+ * A map from int to int, backed by an array indexed by the key, for
+ * non-negative and dense keys such as the ids of the blocks. The keys without
+ * a value are mapped to a default value, so that counters can be incremented
+ * without checking whether they exist. The map is not synchronized.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class IntIntMap {
+
+    int[] values;
+    final int defaultValue;
+
+    //the keys without a value are mapped to defaultValue
+    public IntIntMap(int defaultValue) {
+        this.defaultValue = defaultValue;
+        values = new int[16];
+        if (defaultValue != 0) {
+            Arrays.fill(values, defaultValue);
+        }
+    }
+
+    public int get(int key) {
+        return key >= 0 && key < values.length ? values[key] : defaultValue;
+    }
+
+    public void put(int key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key " + key);
+        }
+        if (key >= values.length) {
+            int oldLength = values.length;
+            values = Arrays.copyOf(values, Math.max(key + 1, 2 * oldLength));
+            if (defaultValue != 0) {
+                Arrays.fill(values, oldLength, values.length, defaultValue);
+            }
+        }
+        values[key] = value;
+    }
+
+    //adds one to the value of the key and returns the new value
+    public int increment(int key) {
+        return increment(key, 1);
+    }
+
+    //adds delta to the value of the key and returns the new value
+    public int increment(int key, int delta) {
+        int res = get(key) + delta;
+        put(key, res);
+        return res;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A map with int keys, backed by an array indexed by the key. It is meant for
+ * non-negative and dense keys, such as the ids of the blocks, which are
+ * assigned by a sequence: the memory used is proportional to the largest key.
+ * Null values are not stored. The map is not synchronized.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class IntObjectMap<V> {
+
+    Object[] values;
+    int size;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    public IntObjectMap(int initialCapacity) {
+        values = new Object[Math.max(1, initialCapacity)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        return key >= 0 && key < values.length ? (V) values[key] : null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    //returns the previous value associated with the key, or null
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key " + key);
+        }
+        if (key >= values.length) {
+            if (value == null) {
+                return null;
+            }
+            values = Arrays.copyOf(values, Math.max(key + 1, 2 * values.length));
+        }
+        V old = (V) values[key];
+        values[key] = value;
+        if (old == null && value != null) {
+            size++;
+        } else if (old != null && value == null) {
+            size--;
+        }
+        return old;
+    }
+
+    public V remove(int key) {
+        return put(key, null);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    //the values, in increasing order of key
+    @SuppressWarnings("unchecked")
+    public ArrayList<V> values() {
+        ArrayList<V> res = new ArrayList<>(size);
+        for (Object v : values) {
+            if (v != null) {
+                res.add((V) v);
+            }
+        }
+        return res;
+    }
+}
@@ -16,76 +16,394 @@
 package edu.ucla.cs.scai.clubsp.commons;
 
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
+ * The distribution of the points of a block along one dimension: for every bin,
+ * the number of points and the sums of their coordinates. A marginal is either
+ * dense, with one entry for every bin, or sparse, with one entry for every
+ * occupied bin only, in increasing order of bin (bins[k] is the bin of the
+ * k-th entry). The scans use the entries, so that they work on both forms.
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
 public class MarginalDistribution implements Serializable {
 
-    public double[][] sum;
+    //a marginal is stored in sparse form if the fraction of occupied bins is below this threshold
+    public static final double SPARSE_OCCUPANCY = 0.125;
+
+    //the sums of the coordinates of the points in entry k are sum[k*dimensionality..(k+1)*dimensionality-1]
+    //the coordinates are integers, so the sums are exact
+    public long[] sum;
     public int[] count;
+    public int dimensionality;
+    public int[] bins; //null if the marginal is dense
+    int width;
 
-    public MarginalDistribution(int width) {
-        sum = new double[width][];
+    //dense marginal
+    public MarginalDistribution(int width, int dimensionality) {
+        this.width = width;
+        this.dimensionality = dimensionality;
+        sum = new long[getArrayLength(width, dimensionality)];
         count = new int[width];
     }
 
+    //sparse marginal, with empty entries for the given bins, which must be sorted
+    public MarginalDistribution(int width, int dimensionality, int[] bins) {
+        this.width = width;
+        this.dimensionality = dimensionality;
+        this.bins = bins;
+        sum = new long[getArrayLength(bins.length, dimensionality)];
+        count = new int[bins.length];
+    }
+
+    //the length of the arrays with one value per entry and dimension - the product is computed
+    //in long, since a wide domain can overflow an int, and a negative width is the result of a
+    //domain whose width overflowed an int
+    static int getArrayLength(int entries, int dimensionality) {
+        long length = (long) entries * dimensionality;
+        if (entries < 0 || length > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Marginal too large: " + entries + " entries with dimensionality " + dimensionality);
+        }
+        return (int) length;
+    }
+
+    //returns the number of bins
+    public int getWidth() {
+        return width;
+    }
+
+    public boolean isSparse() {
+        return bins != null;
+    }
+
+    public int getNumberOfEntries() {
+        return count.length;
+    }
+
+    public int getBin(int entry) {
+        return bins == null ? entry : bins[entry];
+    }
+
+    //the entry of the bin, or -1 if the bin is empty and not stored
+    public int getEntry(int bin) {
+        if (bins == null) {
+            return bin;
+        }
+        int e = Arrays.binarySearch(bins, bin);
+        return e >= 0 ? e : -1;
+    }
+
+    //position is the entry, which is the bin for dense marginals
     public void add(int[] p, int position) {
         count[position]++;
-        if (count[position] == 1) {
-            sum[position] = new double[p.length];
+        int offset = position * dimensionality;
+        for (int i = 0; i < dimensionality; i++) {
+            sum[offset + i] += p[i];
         }
-        for (int i = 0; i < sum[position].length; i++) {
-            sum[position][i] += p[i];
+    }
+
+    //adds a point with the given number of occurrences
+    public void add(int[] p, int position, int weight) {
+        count[position] += weight;
+        int offset = position * dimensionality;
+        for (int i = 0; i < dimensionality; i++) {
+            sum[offset + i] += (long) weight * p[i];
         }
     }
 
+    //the number of points of the marginal, i.e., the sum of their weights
+    public int getTotalCount() {
+        int res = 0;
+        for (int j = 0; j < count.length; j++) {
+            res += count[j];
+        }
+        return res;
+    }
+
+    //the linear sum of the coordinates of the points of the marginal, on every dimension
+    public long[] getTotalSum() {
+        long[] res = new long[dimensionality];
+        for (int j = 0, offset = 0; j < count.length; j++, offset += dimensionality) {
+            for (int i = 0; i < dimensionality; i++) {
+                res[i] += sum[offset + i];
+            }
+        }
+        return res;
+    }
+
+    //an estimate of the memory used by the arrays of the marginal
+    public long getSizeInBytes() {
+        return 4L * count.length + 8L * sum.length + (bins == null ? 0 : 4L * bins.length);
+    }
+
+    //returns an empty marginal of the same class, dense if bins is null
+    protected MarginalDistribution createEmpty(int width, int[] bins) {
+        return bins == null ? new MarginalDistribution(width, dimensionality) : new MarginalDistribution(width, dimensionality, bins);
+    }
+
+    //the following methods are overridden by the subclasses with further sums for every entry
+    //copies n entries starting from entry from into dst, starting from entry to
+    protected void copyEntries(int from, MarginalDistribution dst, int to, int n) {
+        System.arraycopy(count, from, dst.count, to, n);
+        System.arraycopy(sum, from * dimensionality, dst.sum, to * dimensionality, n * dimensionality);
+    }
+
+    //adds (or subtracts) the entry from to the entry to of dst
+    protected void addEntry(int from, MarginalDistribution dst, int to, boolean subtract) {
+        int sign = subtract ? -1 : 1;
+        dst.count[to] += sign * count[from];
+        int offsetFrom = from * dimensionality;
+        int offsetTo = to * dimensionality;
+        for (int i = 0; i < dimensionality; i++) {
+            dst.sum[offsetTo + i] += sign * sum[offsetFrom + i];
+        }
+    }
+
+    //adds (or subtracts) all the entries of m, which has the same form and the same entries
+    protected void addAll(MarginalDistribution m, boolean subtract) {
+        int sign = subtract ? -1 : 1;
+        for (int i = 0; i < count.length; i++) {
+            count[i] += sign * m.count[i];
+        }
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] += sign * m.sum[i];
+        }
+    }
+
+    //replaces the content of this marginal with the content of m
+    protected void assign(MarginalDistribution m) {
+        width = m.width;
+        bins = m.bins;
+        count = m.count;
+        sum = m.sum;
+    }
+
     public void add(MarginalDistribution m) {
-        for (int i = 0; i < m.count.length; i++) {
-            if (m.count[i] > 0) {
-                if (count[i] == 0) {
-                    sum[i] = new double[m.sum[i].length];
+        if (bins == null && m.bins == null || bins != null && Arrays.equals(bins, m.bins)) {
+            addAll(m, false);
+        } else if (bins == null) {
+            for (int e = 0; e < m.count.length; e++) {
+                m.addEntry(e, this, m.bins[e], false);
+            }
+        } else if (m.bins == null) {
+            toDense();
+            addAll(m, false);
+        } else {
+            //the result has the union of the bins
+            int[] union = new int[bins.length + m.bins.length];
+            int n = 0;
+            for (int i = 0, j = 0; i < bins.length || j < m.bins.length;) {
+                if (j == m.bins.length || i < bins.length && bins[i] < m.bins[j]) {
+                    union[n++] = bins[i++];
+                } else if (i == bins.length || m.bins[j] < bins[i]) {
+                    union[n++] = m.bins[j++];
+                } else {
+                    union[n++] = bins[i++];
+                    j++;
                 }
-                count[i] += m.count[i];
-                for (int k = 0; k < sum[i].length; k++) {
-                    sum[i][k] += m.sum[i][k];
+            }
+            MarginalDistribution res = createEmpty(width, Arrays.copyOf(union, n));
+            for (int i = 0, k = 0; i < bins.length; i++) {
+                while (res.bins[k] < bins[i]) {
+                    k++;
+                }
+                copyEntries(i, res, k, 1);
+            }
+            for (int j = 0, k = 0; j < m.bins.length; j++) {
+                while (res.bins[k] < m.bins[j]) {
+                    k++;
                 }
+                m.addEntry(j, res, k, false);
             }
+            assign(res);
+            normalize();
         }
     }
 
+    //the occupied bins of m must be a subset of the occupied bins of this marginal
     public void sub(MarginalDistribution m) {
-        for (int i = 0; i < m.count.length; i++) {
-            if (m.count[i] > 0) {
-                count[i] -= m.count[i];
-                for (int k = 0; k < sum[i].length; k++) {
-                    sum[i][k] -= m.sum[i][k];
+        if (bins == null && m.bins == null) {
+            addAll(m, true);
+        } else if (bins == null) {
+            for (int e = 0; e < m.count.length; e++) {
+                m.addEntry(e, this, m.bins[e], true);
+            }
+        } else {
+            for (int e = 0, k = 0; e < m.count.length; e++) {
+                if (m.count[e] == 0) {
+                    continue;
+                }
+                int bin = m.getBin(e);
+                while (k < bins.length && bins[k] < bin) {
+                    k++;
+                }
+                if (k == bins.length || bins[k] != bin) {
+                    throw new IllegalArgumentException("Bin " + bin + " is not occupied");
                 }
+                m.addEntry(e, this, k, true);
+            }
+            removeEmptyEntries();
+        }
+    }
+
+    private void removeEmptyEntries() {
+        int n = 0;
+        for (int e = 0; e < count.length; e++) {
+            if (count[e] != 0) {
+                n++;
+            }
+        }
+        if (n == count.length) {
+            return;
+        }
+        int[] newBins = new int[n];
+        n = 0;
+        for (int e = 0; e < count.length; e++) {
+            if (count[e] != 0) {
+                newBins[n++] = bins[e];
+            }
+        }
+        MarginalDistribution res = createEmpty(width, newBins);
+        for (int e = 0, k = 0; e < count.length; e++) {
+            if (count[e] != 0) {
+                copyEntries(e, res, k++, 1);
+            }
+        }
+        assign(res);
+    }
+
+    public void toDense() {
+        if (bins == null) {
+            return;
+        }
+        MarginalDistribution res = createEmpty(width, null);
+        for (int e = 0; e < bins.length; e++) {
+            copyEntries(e, res, bins[e], 1);
+        }
+        assign(res);
+    }
+
+    public void toSparse() {
+        if (bins != null) {
+            return;
+        }
+        int n = 0;
+        for (int j = 0; j < count.length; j++) {
+            if (count[j] != 0) {
+                n++;
+            }
+        }
+        int[] newBins = new int[n];
+        n = 0;
+        for (int j = 0; j < count.length; j++) {
+            if (count[j] != 0) {
+                newBins[n++] = j;
+            }
+        }
+        MarginalDistribution res = createEmpty(width, newBins);
+        for (int e = 0; e < newBins.length; e++) {
+            copyEntries(newBins[e], res, e, 1);
+        }
+        assign(res);
+    }
+
+    //chooses the form based on the fraction of occupied bins
+    public void normalize() {
+        if (bins != null) {
+            if (bins.length > SPARSE_OCCUPANCY * width) {
+                toDense();
+            }
+        } else {
+            int occupied = 0;
+            for (int j = 0; j < count.length; j++) {
+                if (count[j] != 0) {
+                    occupied++;
+                }
+            }
+            if (occupied < SPARSE_OCCUPANCY * width) {
+                toSparse();
             }
         }
     }
 
     public MarginalDistribution getCopy() {
-        return getCopy(0, count.length - 1);
+        return getCopy(0, width - 1);
     }
 
+    //returns the bins in [beginIndex, endIndex]
     public MarginalDistribution getCopy(int beginIndex, int endIndex) {
-        MarginalDistribution copy = new MarginalDistribution(endIndex - beginIndex + 1);
-        System.arraycopy(count, beginIndex, copy.count, 0, copy.count.length);
-        //for (int j=beginIndex; j<count.length; j++) {
-        //    copy.count[j-beginIndex]=count[j];
-        //}
-        for (int j = beginIndex; j <= endIndex; j++) {
-            if (count[j] > 0) {
-                copy.sum[j - beginIndex] = new double[sum[j].length];
-                System.arraycopy(sum[j], 0, copy.sum[j - beginIndex], 0, sum[j].length);
-                //for (int k = 0; k < sum[j].length; k++) {
-                //    copy.sum[j - beginIndex][k] = sum[j][k];
-                //}
+        return getCopy(beginIndex, endIndex, true);
+    }
+
+    //if complete is false, the result is a MarginalDistribution, even if this is an instance of a subclass
+    protected MarginalDistribution getCopy(int beginIndex, int endIndex, boolean complete) {
+        int firstEntry, nEntries;
+        int[] copyBins = null;
+        if (bins == null) {
+            firstEntry = beginIndex;
+            nEntries = endIndex - beginIndex + 1;
+        } else {
+            firstEntry = Arrays.binarySearch(bins, beginIndex);
+            if (firstEntry < 0) {
+                firstEntry = -firstEntry - 1;
+            }
+            int lastEntry = Arrays.binarySearch(bins, endIndex);
+            if (lastEntry < 0) {
+                lastEntry = -lastEntry - 2;
             }
+            nEntries = lastEntry - firstEntry + 1;
+            copyBins = new int[nEntries];
+            for (int e = 0; e < nEntries; e++) {
+                copyBins[e] = bins[firstEntry + e] - beginIndex;
+            }
+        }
+        int copyWidth = endIndex - beginIndex + 1;
+        MarginalDistribution copy;
+        if (complete) {
+            copy = createEmpty(copyWidth, copyBins);
+            copyEntries(firstEntry, copy, 0, nEntries);
+        } else {
+            copy = copyBins == null ? new MarginalDistribution(copyWidth, dimensionality) : new MarginalDistribution(copyWidth, dimensionality, copyBins);
+            System.arraycopy(count, firstEntry, copy.count, 0, nEntries);
+            System.arraycopy(sum, firstEntry * dimensionality, copy.sum, 0, nEntries * dimensionality);
         }
         return copy;
     }
 
+    //returns a MarginalDistribution where every bucket merges 2^shift consecutive bins
+    //bucket b contains the bins in [b << shift, ((b + 1) << shift) - 1]
+    public MarginalDistribution getCoarsened(int shift) {
+        int coarseWidth = ((width - 1) >> shift) + 1;
+        MarginalDistribution res;
+        if (bins == null) {
+            res = new MarginalDistribution(coarseWidth, dimensionality);
+        } else {
+            //the bins are sorted, so the buckets of the entries are sorted too
+            int n = 0;
+            for (int e = 0; e < bins.length; e++) {
+                if (n == 0 || bins[e] >> shift != bins[e - 1] >> shift) {
+                    n++;
+                }
+            }
+            int[] coarseBins = new int[n];
+            n = 0;
+            for (int e = 0; e < bins.length; e++) {
+                if (n == 0 || bins[e] >> shift != bins[e - 1] >> shift) {
+                    coarseBins[n++] = bins[e] >> shift;
+                }
+            }
+            res = new MarginalDistribution(coarseWidth, dimensionality, coarseBins);
+        }
+        for (int e = 0, to = -1; e < count.length; e++) {
+            to = bins == null ? e >> shift : (to >= 0 && res.bins[to] == bins[e] >> shift ? to : to + 1);
+            res.count[to] += count[e];
+            for (int k = 0, from = e * dimensionality, dst = to * dimensionality; k < dimensionality; k++) {
+                res.sum[dst + k] += sum[from + k];
+            }
+        }
+        res.normalize();
+        return res;
+    }
+
 }
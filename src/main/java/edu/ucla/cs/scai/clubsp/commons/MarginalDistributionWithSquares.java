@@ -11,78 +11,101 @@ package edu.ucla.cs.scai.clubsp.commons;
  */
 public class MarginalDistributionWithSquares extends MarginalDistribution {
 
-    public double[][] sumSqr;
+    //same layout as sum - the squares are accumulated with 128 bits, since they can overflow a long
+    public Int128Array sumSqr;
 
-    public MarginalDistributionWithSquares(int width) {
-        super(width);
-        sumSqr = new double[width][];
+    public MarginalDistributionWithSquares(int width, int dimensionality) {
+        super(width, dimensionality);
+        sumSqr = new Int128Array(getArrayLength(width, dimensionality));
+    }
+
+    public MarginalDistributionWithSquares(int width, int dimensionality, int[] bins) {
+        super(width, dimensionality, bins);
+        sumSqr = new Int128Array(getArrayLength(bins.length, dimensionality));
     }
 
     @Override
     public void add(int[] p, int position) {
         super.add(p, position);
-        if (count[position] == 1) {
-            sumSqr[position] = new double[p.length];
+        int offset = position * dimensionality;
+        for (int i = 0; i < dimensionality; i++) {
+            sumSqr.add(offset + i, (long) p[i] * p[i]);
         }
-        for (int i = 0; i < sumSqr[position].length; i++) {
-            sumSqr[position][i] += 1.0 * p[i] * p[i];
+    }
+
+    @Override
+    public void add(int[] p, int position, int weight) {
+        super.add(p, position, weight);
+        int offset = position * dimensionality;
+        for (int i = 0; i < dimensionality; i++) {
+            sumSqr.addProduct(offset + i, (long) p[i] * p[i], weight);
         }
     }
 
-    public void add(MarginalDistributionWithSquares m) {
-        for (int i = 0; i < m.count.length; i++) {
-            if (m.count[i] > 0) {
-                if (count[i] == 0) {
-                    sum[i] = new double[m.sum[i].length];
-                    sumSqr[i] = new double[m.sum[i].length];
-                }
-                count[i] += m.count[i];
-                for (int k = 0; k < sum[i].length; k++) {
-                    sum[i][k] += m.sum[i][k];
-                    sumSqr[i][k] += m.sumSqr[i][k];
-                }
+    @Override
+    public long getSizeInBytes() {
+        return super.getSizeInBytes() + 16L * sumSqr.hi.length;
+    }
+
+    @Override
+    protected MarginalDistribution createEmpty(int width, int[] bins) {
+        return bins == null ? new MarginalDistributionWithSquares(width, dimensionality) : new MarginalDistributionWithSquares(width, dimensionality, bins);
+    }
+
+    @Override
+    protected void copyEntries(int from, MarginalDistribution dst, int to, int n) {
+        super.copyEntries(from, dst, to, n);
+        Int128Array dstSqr = ((MarginalDistributionWithSquares) dst).sumSqr;
+        System.arraycopy(sumSqr.hi, from * dimensionality, dstSqr.hi, to * dimensionality, n * dimensionality);
+        System.arraycopy(sumSqr.lo, from * dimensionality, dstSqr.lo, to * dimensionality, n * dimensionality);
+    }
+
+    @Override
+    protected void addEntry(int from, MarginalDistribution dst, int to, boolean subtract) {
+        super.addEntry(from, dst, to, subtract);
+        Int128Array dstSqr = ((MarginalDistributionWithSquares) dst).sumSqr;
+        int offsetFrom = from * dimensionality;
+        int offsetTo = to * dimensionality;
+        for (int i = 0; i < dimensionality; i++) {
+            if (subtract) {
+                dstSqr.sub(offsetTo + i, sumSqr.hi[offsetFrom + i], sumSqr.lo[offsetFrom + i]);
+            } else {
+                dstSqr.add(offsetTo + i, sumSqr, offsetFrom + i);
             }
         }
     }
 
-    public void sub(MarginalDistributionWithSquares m) {
-        for (int i = 0; i < m.count.length; i++) {
-            if (m.count[i] > 0) {
-                count[i] -= m.count[i];
-                for (int k = 0; k < sum[i].length; k++) {
-                    sum[i][k] -= m.sum[i][k];
-                    sumSqr[i][k] -= m.sumSqr[i][k];
-                }
-            }
+    @Override
+    protected void addAll(MarginalDistribution m, boolean subtract) {
+        super.addAll(m, subtract);
+        if (subtract) {
+            sumSqr.sub(((MarginalDistributionWithSquares) m).sumSqr);
+        } else {
+            sumSqr.add(((MarginalDistributionWithSquares) m).sumSqr);
         }
     }
 
+    @Override
+    protected void assign(MarginalDistribution m) {
+        super.assign(m);
+        sumSqr = ((MarginalDistributionWithSquares) m).sumSqr;
+    }
+
     public MarginalDistribution getSimpleCopy(int beginIndex, int endIndex) {
-        return super.getCopy(beginIndex, endIndex);
+        return getCopy(beginIndex, endIndex, false);
     }
 
     public MarginalDistribution getSimpleCopy() {
-        return super.getCopy(0, count.length - 1);
+        return getCopy(0, width - 1, false);
     }
 
     @Override
     public MarginalDistributionWithSquares getCopy(int beginIndex, int endIndex) {
-        MarginalDistributionWithSquares copy = new MarginalDistributionWithSquares(endIndex - beginIndex + 1);
-        System.arraycopy(count, beginIndex, copy.count, 0, copy.count.length);
-        for (int j = beginIndex; j <= endIndex; j++) {
-            if (count[j] > 0) {
-                copy.sum[j - beginIndex] = new double[sum[j].length];
-                System.arraycopy(sum[j], 0, copy.sum[j - beginIndex], 0, sum[j].length);
-                copy.sumSqr[j - beginIndex] = new double[sumSqr[j].length];
-                System.arraycopy(sumSqr[j], 0, copy.sumSqr[j - beginIndex], 0, sumSqr[j].length);
-            }
-
-        }
-        return copy;
+        return (MarginalDistributionWithSquares) getCopy(beginIndex, endIndex, true);
     }
 
     @Override
     public MarginalDistributionWithSquares getCopy() {
-        return getCopy(0, count.length - 1);
+        return getCopy(0, width - 1);
     }
 }
@@ -14,13 +14,13 @@ import java.io.Serializable;
 public class SplitResult implements Serializable {
 
     public int leftN;
-    public double[] leftLS;
-    public double[] leftSS;
+    public long[] leftLS;
+    public Int128Array leftSS;
     public int rightN;
-    public double[] rightLS;
-    public double[] rightSS;
+    public long[] rightLS;
+    public Int128Array rightSS;
 
-    public SplitResult(int leftN, double[] leftLS, double[] leftSS, int rightN, double[] rightLS, double[] rightSS) {
+    public SplitResult(int leftN, long[] leftLS, Int128Array leftSS, int rightN, long[] rightLS, Int128Array rightSS) {
         this.leftN = leftN;
         this.leftLS = leftLS;
         this.leftSS = leftSS;
@@ -55,6 +55,11 @@ public class Utils {
         return d;
     }
 
+    //maps a coordinate read from a data set file to the grid used by an execution with the given scale factor
+    public static int scaleCoordinate(int v, double scaleFactor) {
+        return (int) (v / scaleFactor + 0.5);
+    }
+
     public static double distance(double[] a, double[] b) {
         double d = 0;
         for (int i = 0; i < a.length; i++) {
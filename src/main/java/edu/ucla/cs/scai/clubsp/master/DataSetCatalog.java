@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.master;
+
+import edu.ucla.cs.scai.clubsp.commons.DataSetMetadata;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Directory of the master containing the metadata of the data sets, one file
+ * named dataSetId.meta for every data set. An entry is written the first time
+ * the root of a data set is initialized, and allows the following executions
+ * to skip the computation of the global domain. If a data set is modified, its
+ * entry must be deleted.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class DataSetCatalog {
+
+    final File directory;
+
+    public DataSetCatalog(String path) throws Exception {
+        directory = new File(path);
+        if (!directory.exists() || !directory.isDirectory()) {
+            throw new Exception("Wrong catalog path " + path);
+        }
+    }
+
+    private File getFile(String dataSetId) {
+        return new File(directory, dataSetId + ".meta");
+    }
+
+    //returns the metadata of the data set for the given scale factor, or null if they are not available
+    public synchronized DataSetMetadata get(String dataSetId, double scaleFactor) {
+        File f = getFile(dataSetId);
+        if (!f.exists()) {
+            return null;
+        }
+        try {
+            DataSetMetadata metadata = DataSetMetadata.read(f);
+            return metadata.getScaled(scaleFactor);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    //metadata computed with scale factor 1 are not replaced, since they can be used with any scale factor
+    public synchronized void put(DataSetMetadata metadata) {
+        File f = getFile(metadata.dataSetId);
+        try {
+            if (f.exists() && metadata.scaleFactor != 1) {
+                DataSetMetadata old = DataSetMetadata.read(f);
+                if (old.scaleFactor == 1 && old.getScaled(1) != null) {
+                    return;
+                }
+            }
+            metadata.write(f);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void remove(String dataSetId) {
+        getFile(dataSetId).delete();
+    }
+}
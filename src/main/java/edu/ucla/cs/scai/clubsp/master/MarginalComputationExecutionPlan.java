@@ -6,6 +6,7 @@
 package edu.ucla.cs.scai.clubsp.master;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 
 /**
@@ -14,12 +15,17 @@ import java.util.HashSet;
  */
 public class MarginalComputationExecutionPlan {
 
+    int[] blockIds; //the blocks whose marginals are exchanged together, following this plan
     ArrayList<String>[] workerAllocations;
 
     HashSet<Integer> completedDimensions = new HashSet<>();
     int[] numberOfPairsLeft;
+    //the global marginals of a dimension end on the first worker of its allocation, which evaluates the block on all its dimensions at once
+    HashMap<String, ArrayList<Integer>> dimensionsOfAggregator = new HashMap<>();
+    HashMap<String, Integer> completedDimensionsOfAggregator = new HashMap<>();
 
-    public MarginalComputationExecutionPlan(int dimensionality, ArrayList<String> workerIds) {
+    public MarginalComputationExecutionPlan(int[] blockIds, int dimensionality, ArrayList<String> workerIds) {
+        this.blockIds = blockIds;
         workerAllocations = new ArrayList[dimensionality];
         numberOfPairsLeft = new int[dimensionality];
         int n = workerIds.size();
@@ -31,9 +37,37 @@ public class MarginalComputationExecutionPlan {
             if (n == 1) {
                 completedDimensions.add(i);
             }
+            ArrayList<Integer> dimensions = dimensionsOfAggregator.get(workerAllocations[i].get(0));
+            if (dimensions == null) {
+                dimensions = new ArrayList<>();
+                dimensionsOfAggregator.put(workerAllocations[i].get(0), dimensions);
+                completedDimensionsOfAggregator.put(workerAllocations[i].get(0), 0);
+            }
+            dimensions.add(i);
         }
     }
 
+    public String getAggregator(int d) {
+        return workerAllocations[d].get(0);
+    }
+
+    //the global marginals of the dimension are complete - if they were the last ones of the aggregator,
+    //returns all the dimensions of the aggregator, otherwise null
+    public synchronized int[] aggregationCompleted(int d) {
+        String aggregator = getAggregator(d);
+        int completed = completedDimensionsOfAggregator.get(aggregator) + 1;
+        completedDimensionsOfAggregator.put(aggregator, completed);
+        ArrayList<Integer> dimensions = dimensionsOfAggregator.get(aggregator);
+        if (completed < dimensions.size()) {
+            return null;
+        }
+        int[] res = new int[dimensions.size()];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = dimensions.get(i);
+        }
+        return res;
+    }
+
     public String[][] initComputation(int d) {
         int n = workerAllocations[d].size();
         if (n == 1 || numberOfPairsLeft[d] > 0) {
@@ -5,7 +5,9 @@
  */
 package edu.ucla.cs.scai.clubsp.master;
 
+import edu.ucla.cs.scai.clubsp.commons.ExecutionOptions;
 import edu.ucla.cs.scai.clubsp.commons.RegisteredWorker;
+import edu.ucla.cs.scai.clubsp.messages.AbortExecutionRequest;
 import edu.ucla.cs.scai.clubsp.messages.ClubsPMessage;
 import edu.ucla.cs.scai.clubsp.messages.GenerateDataSetRequest;
 import java.io.ObjectOutputStream;
@@ -25,11 +27,19 @@ public class Master {
     int port;
     final HashMap<String, RegisteredWorker> registeredWorkers = new HashMap<>();
     final HashMap<String, MasterExecution> masterExecutions = new HashMap<>();
+    DataSetCatalog catalog; //null if no catalog was specified
 
     public Master(int port) throws Exception {
         this.port = port;
     }
 
+    public Master(int port, String catalogPath) throws Exception {
+        this.port = port;
+        if (catalogPath != null) {
+            catalog = new DataSetCatalog(catalogPath);
+        }
+    }
+
     //start listening on the port specified with the constructor
     public void start() throws Exception {
 
@@ -66,18 +76,39 @@ public class Master {
     }
 
     //start a new clustering execution
-    public synchronized void initExecution(String dataSetId, double scaleFactor) {
+    public synchronized void initExecution(String dataSetId, double scaleFactor, ExecutionOptions options) {
         if (registeredWorkers.isEmpty()) {
             System.out.println("No workers available, sorry!");
         } else {
-            MasterExecution newExec = new MasterExecution(this, dataSetId, scaleFactor);
+            MasterExecution newExec = new MasterExecution(this, dataSetId, scaleFactor, options);
             masterExecutions.put(newExec.executionId, newExec);
+            newExec.start();
         }
     }
 
+    public synchronized MasterExecution getExecution(String executionId) {
+        return masterExecutions.get(executionId);
+    }
+
+    //aborts the execution on the workers, and starts it again with the same parameters
+    public synchronized void restartExecution(final MasterExecution execution) {
+        masterExecutions.remove(execution.executionId);
+        new Thread() {
+            @Override
+            public void run() {
+                AbortExecutionRequest c = new AbortExecutionRequest(execution.executionId);
+                for (String workerId : execution.workerIds) {
+                    sendMessage(workerId, c);
+                }
+            }
+        }.start();
+        initExecution(execution.dataSetId, execution.scaleFactor, execution.options);
+    }
+
     //args[0] is the port used by the master
+    //args[1] is optional, and is the path of the directory with the data set catalog
     public static void main(String[] args) {
-        if (args == null || args.length != 1) {
+        if (args == null || args.length < 1 || args.length > 2) {
             args = new String[]{"9192"};
             //System.out.println("Parameters needed: port");
             //return;
@@ -91,7 +122,7 @@ public class Master {
             return;
         }
         try {
-            new Master(port).start();
+            new Master(port, args.length > 1 ? args[1] : null).start();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -15,6 +15,7 @@
  */
 package edu.ucla.cs.scai.clubsp.master;
 
+import edu.ucla.cs.scai.clubsp.commons.Int128Array;
 import edu.ucla.cs.scai.clubsp.commons.Range;
 import java.util.Arrays;
 
@@ -27,6 +28,8 @@ public class MasterClusterBlock implements Comparable<MasterClusterBlock> {
     int id;
     double[] globalLS; //linear sum of the coordinates of the global points in the block
     double[] globalSS;//squared sum of the coordinates of the global points in the block
+    long[] exactLS; //exact linear sum, when the block was computed from the sums of the workers
+    Int128Array exactSS; //exact squared sum, when the block was computed from the sums of the workers
     int globalN; //the number of global points inside the block
     Range r; //the coordinates of the global range
     Range restrictedRange; //the coordinates of the global range
@@ -202,6 +205,9 @@ public class MasterClusterBlock implements Comparable<MasterClusterBlock> {
     }
 
     public void addGlobalNLSSS(int n, double[] LS, double[] SS, boolean first) {
+        //the exact sums are not available anymore
+        exactLS = null;
+        exactSS = null;
         if (first) {
             this.globalN = n;
             this.globalLS = LS;
@@ -215,6 +221,26 @@ public class MasterClusterBlock implements Comparable<MasterClusterBlock> {
         }
     }
 
+    //the sums sent by the workers are exact, and they are accumulated exactly before being converted
+    public void addGlobalNLSSS(int n, long[] LS, Int128Array SS, boolean first) {
+        if (first) {
+            this.globalN = n;
+            exactLS = LS.clone();
+            exactSS = SS.getCopy();
+        } else {
+            this.globalN += n;
+            for (int i = 0; i < LS.length; i++) {
+                exactLS[i] += LS[i];
+            }
+            exactSS.add(SS);
+        }
+        globalLS = new double[exactLS.length];
+        for (int i = 0; i < exactLS.length; i++) {
+            globalLS[i] = exactLS[i];
+        }
+        globalSS = exactSS.toDoubleArray();
+    }
+
     public double[] getCentroid() {
         double[] centroid = new double[dimensionality];
         for (int k = 0; k < dimensionality; k++) {
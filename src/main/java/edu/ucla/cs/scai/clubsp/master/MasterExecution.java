@@ -16,12 +16,18 @@
 package edu.ucla.cs.scai.clubsp.master;
 
 import edu.ucla.cs.scai.clubsp.commons.BestSplitResult;
+import edu.ucla.cs.scai.clubsp.commons.CoordinateDictionary;
+import edu.ucla.cs.scai.clubsp.commons.DataSetMetadata;
+import edu.ucla.cs.scai.clubsp.commons.ExecutionOptions;
+import edu.ucla.cs.scai.clubsp.commons.Int128Array;
+import edu.ucla.cs.scai.clubsp.commons.IntIntMap;
+import edu.ucla.cs.scai.clubsp.commons.IntObjectMap;
 import edu.ucla.cs.scai.clubsp.commons.Range;
 import edu.ucla.cs.scai.clubsp.commons.RegisteredWorker;
 import edu.ucla.cs.scai.clubsp.commons.SplitResult;
-import edu.ucla.cs.scai.clubsp.messages.ComputeBestSplitRequest;
-import edu.ucla.cs.scai.clubsp.messages.ComputeValleyCriterionRequest;
+import edu.ucla.cs.scai.clubsp.messages.EvaluateBlockRequest;
 import edu.ucla.cs.scai.clubsp.messages.FinalRefinementRequest;
+import edu.ucla.cs.scai.clubsp.messages.FinalizeBlockRequest;
 import edu.ucla.cs.scai.clubsp.messages.InitRootRequest;
 import edu.ucla.cs.scai.clubsp.messages.IntermediateRefinementRequest;
 import edu.ucla.cs.scai.clubsp.messages.LoadDataSetRequest;
@@ -29,12 +35,12 @@ import edu.ucla.cs.scai.clubsp.messages.RestrictedCountRequest;
 import edu.ucla.cs.scai.clubsp.messages.SendMarginalsRequest;
 import edu.ucla.cs.scai.clubsp.messages.SplitRequest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.PriorityQueue;
 
 /**
@@ -48,12 +54,21 @@ public class MasterExecution {
     final String executionId;
     final String dataSetId;
     final double scaleFactor;
+    final ExecutionOptions options;
+    DataSetMetadata metadata; //null if the data set is not in the catalog
+    boolean aborted; //the catalog entry did not match the data, and the execution was started again
     Range globalDomain;
+    CoordinateDictionary globalDictionary;
     int receivedLocalDomains;
     int receivedRootInfo;
+    int receivedRootPoints;
     PriorityQueue<MasterClusterBlock> splittingQueue = new PriorityQueue<>();
+    PriorityQueue<MasterClusterBlock> undecidedBlocks = new PriorityQueue<>(); //the blocks extracted from the queue, whose split was not decided yet
+    int splittingBlocks; //the blocks whose split was decided, but not completed by the workers yet
+    ArrayList<Integer> decidedSplits = new ArrayList<>(); //the decisions not sent to the workers yet
+    ArrayList<Integer> decidedClusters = new ArrayList<>();
     MasterClusterBlock root;
-    HashMap<Integer, MasterClusterBlock> blocks = new HashMap<>();
+    IntObjectMap<MasterClusterBlock> blocks = new IntObjectMap<>();
     LinkedList<MasterClusterBlock> clusters = new LinkedList<>();
     ArrayList<MasterClusterBlock> outliers = new ArrayList<>();
     double SSQ, SSQ0, SSQ0withoutOutliers;
@@ -62,14 +77,16 @@ public class MasterExecution {
     double BCSSQ = 0;
     double chIndex = 0;
     double maxCHindex;
-    HashMap<Integer, MarginalComputationExecutionPlan> marginalComputationExecutionPlans = new HashMap<>();
+    //the following maps are indexed by block id - the entries of the best splits and of the plans are removed when the block is split or becomes a cluster
+    IntObjectMap<MarginalComputationExecutionPlan> marginalComputationExecutionPlans = new IntObjectMap<>();
     int dimensionality;
-    HashMap<Integer, HashMap<Integer, BestSplitResult>> bestSplitReceived = new HashMap<>();
-    HashMap<Integer, Integer> valleyCriterionReceived = new HashMap<>();
-    HashSet<Integer> valleyCriterionSatisfied = new HashSet<>();
-    HashMap<Integer, Integer> receivedSplitInfo = new HashMap<>();
-    HashMap<Integer, Integer> dimensionOfBestSplitReceived = new HashMap<>();
+    IntObjectMap<BestSplitResult[]> bestSplitReceived = new IntObjectMap<>(); //the best split of every dimension
+    IntIntMap receivedBestSplits = new IntIntMap(0);
+    IntIntMap valleyCriterionSatisfied = new IntIntMap(0); //1 if the criterion was satisfied on some dimension
+    IntIntMap receivedSplitInfo = new IntIntMap(0);
+    IntIntMap dimensionOfBestSplitReceived = new IntIntMap(-1);
     private static final double radiusMultiplier = 3;
+    private static final double valleyDelta = 0.1;
     ArrayList<Integer> noiseBlockCandidates = new ArrayList<>();
     int receivedRestrictedCounts = 0;
     int receivedIntermediateRefinement = 0;
@@ -85,26 +102,62 @@ public class MasterExecution {
     long finishTime;
     int clustersAfterDivisiveStep;
 
-    public MasterExecution(final Master master, final String dataSetId, final double scaleFactor) {
+    public MasterExecution(final Master master, final String dataSetId, final double scaleFactor, final ExecutionOptions options) {
         startTime = System.currentTimeMillis();
         this.master = master;
         this.dataSetId = dataSetId;
         this.scaleFactor = scaleFactor;
+        this.options = options;
         this.executionId = dataSetId + "_" + startTime;
         this.workerIds.addAll(master.registeredWorkers.keySet());
+        //with a dictionary, the workers must exchange their distinct values before building the root, so the catalog is not used
+        if (master.catalog != null && !options.dictionary) {
+            metadata = master.catalog.get(dataSetId, scaleFactor);
+        }
+    }
+
+    //sends the data set to the workers - if the global domain is known from the catalog,
+    //the workers build the root as soon as their data are loaded, without waiting for the other workers
+    public synchronized void start() {
         final HashMap<String, RegisteredWorker> currentWorkers = new HashMap<>(master.registeredWorkers);
+        if (metadata != null) {
+            System.out.println("Metadata of " + dataSetId + " found in catalog");
+            startInitRootTime = startTime;
+            globalDomain = metadata.domain.getCopy();
+            dimensionality = metadata.dimensionality;
+            root = MasterClusterBlock.initRoot(globalDomain, 0);
+            blocks.put(0, root);
+        }
+        final Range knownDomain = metadata == null ? null : metadata.domain.getCopy();
         new Thread() {
             @Override
             public void run() {
-                LoadDataSetRequest c = new LoadDataSetRequest(dataSetId, executionId, currentWorkers, scaleFactor);
+                LoadDataSetRequest c = new LoadDataSetRequest(dataSetId, executionId, currentWorkers, workerIds, scaleFactor, options, knownDomain);
                 for (String workerId : workerIds) {
                     master.sendMessage(workerId, c);
                 }
             }
         }.start();
+        if (metadata != null && metadata.hasRootStatistics()) {
+            //the messages of the workers are ignored, since N, LS and SS of the root are already known
+            root.addGlobalNLSSS(metadata.size, metadata.LS.clone(), metadata.SS.clone(), true);
+            startDivisivePhase();
+        }
     }
 
-    public synchronized void increaseReceivedLocalDoamins(Range localDomain) {
+    public synchronized void increaseReceivedLocalDoamins(Range localDomain, CoordinateDictionary localDictionary) {
+        if (aborted) {
+            return;
+        }
+        if (metadata != null) {
+            //a worker sends its local domain only if it is not contained in the domain of the catalog
+            System.out.println("The local domain " + localDomain + " is not contained in the domain of the catalog " + globalDomain);
+            restartWithoutCatalog();
+            return;
+        }
+        if (localDictionary != null) {
+            globalDictionary = globalDictionary == null ? localDictionary : globalDictionary.merge(localDictionary);
+        }
         if (receivedLocalDomains == 0) {
             globalDomain = localDomain;
             dimensionality = localDomain.getDimensionality();
@@ -119,43 +172,147 @@ public class MasterExecution {
             startInitRootTime = System.currentTimeMillis();
             root = MasterClusterBlock.initRoot(globalDomain, 0);
             blocks.put(0, root);
-            InitRootRequest c = new InitRootRequest(executionId, globalDomain);
+            InitRootRequest c = new InitRootRequest(executionId, globalDomain, globalDictionary);
             for (String workerId : workerIds) {
                 master.sendMessage(workerId, c);
             }
         }
     }
 
-    public synchronized void increaseReceivedRootInfo(int n, double[] LS, double[] SS) {
+    public synchronized void increaseReceivedRootInfo(int n, long[] LS, Int128Array SS) {
+        if (aborted) {
+            return;
+        }
         receivedRootInfo++;
+        if (metadata != null && metadata.hasRootStatistics()) {
+            //the root was taken from the catalog - the number of points is only used to check that the entry is up to date
+            //the divisive phase is already in progress, so its result would be wrong if the check fails
+            receivedRootPoints += n;
+            if (receivedRootInfo == workerIds.size() && receivedRootPoints != metadata.size) {
+                System.out.println("The workers have " + receivedRootPoints + " points, while the catalog reports " + metadata.size);
+                restartWithoutCatalog();
+            }
+            return;
+        }
         root.addGlobalNLSSS(n, LS, SS, receivedRootInfo == 1);
         if (receivedRootInfo == workerIds.size()) {
-            startSplittingTime = System.currentTimeMillis();
-            root.computeGlobalSSQ();
-            SSQ0 = root.getGlobalSSQ();
-            SSQ = SSQ0;
-            splittingQueue.offer(root);
-            startSplitNextEnqueuedBlock();
+            if (master.catalog != null) {
+                master.catalog.put(new DataSetMetadata(dataSetId, scaleFactor, root.globalN, globalDomain.getCopy(), root.globalLS.clone(), root.globalSS.clone()));
+            }
+            startDivisivePhase();
+        }
+    }
+
+    //the catalog entry does not match the data: it is removed, and the execution is aborted on the workers and
+    //started again, so that the global domain and the statistics of the root are computed from the data
+    private void restartWithoutCatalog() {
+        aborted = true;
+        master.catalog.remove(dataSetId);
+        System.out.println("The catalog entry of " + dataSetId + " was removed - the execution " + executionId + " is restarted");
+        master.restartExecution(this);
+    }
+
+    private void startDivisivePhase() {
+        startSplittingTime = System.currentTimeMillis();
+        root.computeGlobalSSQ();
+        SSQ0 = root.getGlobalSSQ();
+        SSQ = SSQ0;
+        splittingQueue.offer(root);
+        continueDivisivePhase();
+    }
+
+    //the blocks with the highest SSQ are evaluated concurrently, up to options.parallelBlocks at the same time,
+    //but the decisions are taken in the order of the sequential execution: the next block decided is the one
+    //with the highest SSQ among the blocks not decided yet, and nothing is decided while a split is in progress,
+    //since its children could come first - thus, the result does not depend on options.parallelBlocks
+    private void continueDivisivePhase() {
+        if (options.levelSynchronous) {
+            continueLevelSynchronousDivisivePhase();
+            return;
+        }
+        while (true) {
+            MasterClusterBlock next = undecidedBlocks.peek();
+            if (splittingBlocks == 0 && next != null && receivedBestSplits.get(next.id) == dimensionality
+                    && (splittingQueue.isEmpty() || next.compareTo(splittingQueue.peek()) <= 0)) {
+                undecidedBlocks.poll();
+                decide(next.id);
+                sendDecisions();
+            } else if (!splittingQueue.isEmpty() && (undecidedBlocks.size() + splittingBlocks < options.parallelBlocks
+                    || splittingBlocks == 0 && (next == null || splittingQueue.peek().compareTo(next) < 0))) {
+                //the block to be decided next is always evaluated, even if the limit is reached
+                MasterClusterBlock block = splittingQueue.poll();
+                undecidedBlocks.offer(block);
+                startEvaluation(new MasterClusterBlock[]{block});
+            } else {
+                break;
+            }
+        }
+        if (splittingQueue.isEmpty() && undecidedBlocks.isEmpty() && splittingBlocks == 0) { //the divisive phase has ended, the intermediate refinement must be started
+            startIntermediateRefinement();
+        }
+    }
+
+    //all the leaves in the queue are processed in one round: their marginals are exchanged, and they are evaluated and split, with batched messages
+    //the decisions of a round are taken in decreasing order of SSQ, but the children of the blocks split in the round wait for the next round,
+    //while in the sequential execution they can be decided before the other blocks of the round, so the result can be different
+    private void continueLevelSynchronousDivisivePhase() {
+        if (splittingBlocks > 0) { //the round is not completed yet
+            return;
+        }
+        if (!undecidedBlocks.isEmpty()) {
+            for (MasterClusterBlock block : undecidedBlocks) {
+                if (receivedBestSplits.get(block.id) < dimensionality) {
+                    return;
+                }
+            }
+            while (!undecidedBlocks.isEmpty()) {
+                decide(undecidedBlocks.poll().id);
+            }
+            sendDecisions();
+            if (splittingBlocks > 0) {
+                return;
+            }
+        }
+        if (splittingQueue.isEmpty()) { //the divisive phase has ended, the intermediate refinement must be started
+            startIntermediateRefinement();
+            return;
         }
+        MasterClusterBlock[] round = splittingQueue.toArray(new MasterClusterBlock[splittingQueue.size()]);
+        splittingQueue.clear();
+        undecidedBlocks.addAll(Arrays.asList(round));
+        startEvaluation(round);
     }
 
-    void startSplitNextEnqueuedBlock() {
-        final MasterClusterBlock block = splittingQueue.poll();
-        final MarginalComputationExecutionPlan ep = new MarginalComputationExecutionPlan(dimensionality, workerIds);
-        marginalComputationExecutionPlans.put(block.id, ep);
+    //the marginals of the blocks are exchanged together, following the same plan
+    //with speculative evaluation, the workers exchange the marginals of the new blocks right after the split, following
+    //the plan by themselves, so the master only requests the evaluation to the aggregators
+    //the global statistics sent with the evaluation requests are read here, since the thread sending them does not hold the lock of the execution
+    synchronized void startEvaluation(final MasterClusterBlock[] evaluatedBlocks) {
+        final int[] blockIds = new int[evaluatedBlocks.length];
+        for (int i = 0; i < blockIds.length; i++) {
+            blockIds[i] = evaluatedBlocks[i].id;
+        }
+        final int[] globalN = new int[blockIds.length];
+        final double[][] globalLS = new double[blockIds.length][];
+        final double[][] globalSS = new double[blockIds.length][];
+        getGlobalStatistics(blockIds, globalN, globalLS, globalSS);
+        final MarginalComputationExecutionPlan ep = new MarginalComputationExecutionPlan(blockIds, dimensionality, workerIds);
+        for (int blockId : blockIds) {
+            marginalComputationExecutionPlans.put(blockId, ep);
+        }
         new Thread() {
             @Override
             public void run() {
+                boolean speculative = options.speculativeEvaluation && evaluatedBlocks[0] != root;
                 for (int i = 0; i < dimensionality; i++) {
-                    if (workerIds.size() == 1) {
-                        String workerId = workerIds.get(0);
-                        master.sendMessage(workerId, new ComputeBestSplitRequest(executionId, block.id, i, block.globalN, block.globalLS, block.globalSS));
+                    if (workerIds.size() == 1 || speculative) {
+                        sendEvaluateBlockRequest(ep, ep.aggregationCompleted(i), globalN, globalLS, globalSS);
                     } else {
                         String[][] plan = ep.initComputation(i);
                         for (int k = 0; k < plan.length; k++) {
                             String s = plan[k][1];
                             String r = plan[k][0];
-                            master.sendMessage(s, new SendMarginalsRequest(executionId, block.id, i, r));
+                            master.sendMessage(s, new SendMarginalsRequest(executionId, blockIds, i, r));
                         }
                     }
                 }
@@ -164,14 +321,16 @@ public class MasterExecution {
         }.start();
     }
 
-    public synchronized void increaseReceivedMarginals(final int blockId, final int dimension) {
-        final MarginalComputationExecutionPlan ex = marginalComputationExecutionPlans.get(blockId);
-        final MasterClusterBlock block = blocks.get(blockId);
+    public synchronized void increaseReceivedMarginals(final int[] blockIds, final int dimension) {
+        final MarginalComputationExecutionPlan ex = marginalComputationExecutionPlans.get(blockIds[0]);
         boolean allReceived = ex.decreasePairsLeft(dimension);
         if (allReceived) {
             if (ex.completedDimensions.contains(dimension)) {
-                String workerId = ex.workerAllocations[dimension].get(0);
-                master.sendMessage(workerId, new ComputeBestSplitRequest(executionId, blockId, dimension, block.globalN, block.globalLS, block.globalSS));
+                int[] globalN = new int[ex.blockIds.length];
+                double[][] globalLS = new double[ex.blockIds.length][];
+                double[][] globalSS = new double[ex.blockIds.length][];
+                getGlobalStatistics(ex.blockIds, globalN, globalLS, globalSS);
+                sendEvaluateBlockRequest(ex, ex.aggregationCompleted(dimension), globalN, globalLS, globalSS);
             } else {
                 new Thread() {
                     @Override
@@ -180,7 +339,7 @@ public class MasterExecution {
                         for (int k = 0; k < plan.length; k++) {
                             String s = plan[k][1];
                             String r = plan[k][0];
-                            master.sendMessage(s, new SendMarginalsRequest(executionId, blockId, dimension, r));
+                            master.sendMessage(s, new SendMarginalsRequest(executionId, blockIds, dimension, r));
                         }
                     }
                 }.start();
@@ -188,105 +347,156 @@ public class MasterExecution {
         }
     }
 
-    public synchronized void increaseReceivedBestSplits(int blockId, int dimension, BestSplitResult split) {
+    //the aggregator evaluates the blocks on all its dimensions when their global marginals are complete
+    //dimensions is null if some of them are not complete yet
+    //the global statistics of the blocks are provided by the caller, since this method can be invoked without holding the lock of the execution
+    private void sendEvaluateBlockRequest(MarginalComputationExecutionPlan ep, int[] dimensions, int[] globalN, double[][] globalLS, double[][] globalSS) {
+        if (dimensions != null) {
+            master.sendMessage(ep.getAggregator(dimensions[0]), new EvaluateBlockRequest(executionId, ep.blockIds, dimensions, globalN, globalLS, globalSS, valleyDelta));
+        }
+    }
 
-        HashMap<Integer, BestSplitResult> bestSplits = bestSplitReceived.get(blockId);
-        if (bestSplits == null) {
-            bestSplits = new HashMap<>();
-            bestSplitReceived.put(blockId, bestSplits);
+    //must be invoked holding the lock of the execution, since the map of the blocks and their statistics are updated by the splits
+    private void getGlobalStatistics(int[] blockIds, int[] globalN, double[][] globalLS, double[][] globalSS) {
+        for (int i = 0; i < blockIds.length; i++) {
+            MasterClusterBlock block = blocks.get(blockIds[i]);
+            globalN[i] = block.globalN;
+            globalLS[i] = block.globalLS;
+            globalSS[i] = block.globalSS;
         }
-        bestSplits.put(dimension, split);
-        if (bestSplits.size() == dimensionality) {
-            double maxSSQ = 0;
-            for (Map.Entry<Integer, BestSplitResult> e : bestSplits.entrySet()) {
-                if (e.getValue().getDeltaSSQ() > maxSSQ) {
-                    maxSSQ = e.getValue().getDeltaSSQ();
-                    dimensionOfBestSplitReceived.put(blockId, e.getKey());
-                }
+    }
+
+    //the valley criterion is computed together with the best splits, but it is used only if the CH index of the best split is borderline
+    public synchronized void increaseReceivedEvaluation(int[] blockIds, int[] dimensions, BestSplitResult[][] splits, boolean[][] valleyCriterion) {
+        boolean completed = false;
+        for (int k = 0; k < blockIds.length; k++) {
+            int blockId = blockIds[k];
+            BestSplitResult[] bestSplits = bestSplitReceived.get(blockId);
+            if (bestSplits == null) {
+                bestSplits = new BestSplitResult[dimensionality];
+                bestSplitReceived.put(blockId, bestSplits);
             }
-            //now we need to check if the best split is effective
-            double newBCSSQ = BCSSQ + maxSSQ;
-            double newSSQ = SSQ - maxSSQ;
-            double newCHindex = (newBCSSQ * (root.globalN - (nLeaves + 1))) / (newSSQ * nLeaves); //k=k-1+1
-
-            if (nLeaves > 1 && newCHindex >= maxCHindex) { //do split                
-                doSplit(blockId);
-            } else if (newCHindex >= 0.7 * maxCHindex) { //compute valley criterion                
-                for (int i = 0; i < marginalComputationExecutionPlans.get(blockId).workerAllocations.length; i++) {
-                    String workerId = marginalComputationExecutionPlans.get(blockId).workerAllocations[i].get(0);
-                    master.sendMessage(workerId, new ComputeValleyCriterionRequest(executionId, blockId, i, 0.1));
-                }
-            } else { //the split is not effective - a new block is extracted from the queue
-                clusters.add(blocks.get(blockId));
-                if (splittingQueue.isEmpty()) { //the divisive phase has ended, the intermediate refinement must be started
-                    startIntermediateRefinement();
-                } else { //extract next block from queue and start computing its best split
-                    startSplitNextEnqueuedBlock();
+            for (int i = 0; i < dimensions.length; i++) {
+                bestSplits[dimensions[i]] = splits[k][i];
+                if (valleyCriterion[k][i]) {
+                    valleyCriterionSatisfied.put(blockId, 1);
                 }
             }
+            if (receivedBestSplits.increment(blockId, dimensions.length) == dimensionality) {
+                completed = true;
+            }
+        }
+        if (completed) {
+            continueDivisivePhase();
         }
     }
 
-    private void doSplit(int blockId) {
-        //send the split request to the workerIds
+    //applies the CH index test to the best split of the block
+    private void decide(int blockId) {
+        BestSplitResult[] bestSplits = bestSplitReceived.get(blockId);
+        double maxSSQ = 0;
+        for (int i = 0; i < dimensionality; i++) {
+            if (bestSplits[i].getDeltaSSQ() > maxSSQ) {
+                maxSSQ = bestSplits[i].getDeltaSSQ();
+                dimensionOfBestSplitReceived.put(blockId, i);
+            }
+        }
+        //now we need to check if the best split is effective
+        double newBCSSQ = BCSSQ + maxSSQ;
+        double newSSQ = SSQ - maxSSQ;
+        double newCHindex = (newBCSSQ * (root.globalN - (nLeaves + 1))) / (newSSQ * nLeaves); //k=k-1+1
+
+        if (nLeaves > 1 && newCHindex >= maxCHindex
+                || newCHindex >= 0.7 * maxCHindex && valleyCriterionSatisfied.get(blockId) == 1) { //do split - with a borderline index, only if the valley criterion was satisfied on some dimension
+            doSplit(blockId);
+            if (options.levelSynchronous) {
+                //the next decisions of the round need the index after the split, before the workers complete it
+                updateCHindex(maxSSQ);
+            }
+        } else { //the split is not effective
+            addCluster(blockId);
+        }
+    }
 
+    private void doSplit(int blockId) {
         int bestDimension = dimensionOfBestSplitReceived.get(blockId);
-        BestSplitResult bestSplit = bestSplitReceived.get(blockId).get(bestDimension);
+        BestSplitResult bestSplit = bestSplitReceived.get(blockId)[bestDimension];
+        bestSplitReceived.remove(blockId);
+        marginalComputationExecutionPlans.remove(blockId);
         MasterClusterBlock block = blocks.get(blockId);
         int leftId = sequence.next();
         int rightId = sequence.next();
         nLeaves++;
         MasterClusterBlock[] newBlocks = block.split(bestDimension, bestSplit.getPosition(), leftId, rightId);
+        splittingBlocks++;
         blocks.put(leftId, newBlocks[0]);
         blocks.put(rightId, newBlocks[1]);
-        for (String workerId : workerIds) {
-            master.sendMessage(workerId, new SplitRequest(executionId, blockId, bestDimension, bestSplit.getPosition(), leftId, rightId, block.globalN, block.globalLS, block.globalSS));
-        }
+        decidedSplits.add(blockId);
     }
 
-    public synchronized void increaseReceivedValleyCriterion(int blockId, int dimension, boolean satisfied) {
-        Integer alreadyReceived = valleyCriterionReceived.get(blockId);
-        if (alreadyReceived == null) {
-            valleyCriterionReceived.put(blockId, 1);
-            alreadyReceived = 1;
-        } else {
-            valleyCriterionReceived.put(blockId, alreadyReceived + 1);
-            if (valleyCriterionSatisfied.contains(blockId)) { //the criterion was already satisfied, therefore the split was already triggered
-                return;
+    //the block will not be split anymore, so the workers can release its marginals
+    private void addCluster(int blockId) {
+        clusters.add(blocks.get(blockId));
+        bestSplitReceived.remove(blockId);
+        marginalComputationExecutionPlans.remove(blockId);
+        decidedClusters.add(blockId);
+    }
+
+    //sends the split and finalize requests of the decisions taken, with one message per worker
+    private void sendDecisions() {
+        if (!decidedSplits.isEmpty()) {
+            int n = decidedSplits.size();
+            int[] blockIds = new int[n], splitDimensions = new int[n], splitPositions = new int[n], leftIds = new int[n], rightIds = new int[n], globalN = new int[n];
+            double[][] globalLS = new double[n][];
+            double[][] globalSS = new double[n][];
+            for (int i = 0; i < n; i++) {
+                MasterClusterBlock block = blocks.get(decidedSplits.get(i));
+                blockIds[i] = block.id;
+                splitDimensions[i] = block.sd;
+                splitPositions[i] = block.sp;
+                leftIds[i] = block.lc.id;
+                rightIds[i] = block.rc.id;
+                globalN[i] = block.globalN;
+                globalLS[i] = block.globalLS;
+                globalSS[i] = block.globalSS;
+            }
+            for (String workerId : workerIds) {
+                master.sendMessage(workerId, new SplitRequest(executionId, blockIds, splitDimensions, splitPositions, leftIds, rightIds, globalN, globalLS, globalSS));
             }
-            alreadyReceived++;
+            decidedSplits.clear();
         }
-        if (satisfied) {
-            valleyCriterionSatisfied.add(blockId);
-            doSplit(blockId);
-        } else if (alreadyReceived == dimensionality) {
-            clusters.add(blocks.get(blockId));
-            if (splittingQueue.isEmpty()) {
-                startIntermediateRefinement();
-            } else {
-                startSplitNextEnqueuedBlock();
+        if (!decidedClusters.isEmpty()) {
+            int[] blockIds = new int[decidedClusters.size()];
+            for (int i = 0; i < blockIds.length; i++) {
+                blockIds[i] = decidedClusters.get(i);
             }
+            for (String workerId : workerIds) {
+                master.sendMessage(workerId, new FinalizeBlockRequest(executionId, blockIds));
+            }
+            decidedClusters.clear();
         }
     }
 
-    public synchronized void increaseReceivedSplit(int blockId, SplitResult split) {
-        Integer count = receivedSplitInfo.get(blockId);
-        if (count == null) {
-            count = 1;
-        } else {
-            count++;
+    public synchronized void increaseReceivedSplit(int[] blockIds, SplitResult[] splits) {
+        boolean completed = false;
+        for (int i = 0; i < blockIds.length; i++) {
+            int count = receivedSplitInfo.increment(blockIds[i]);
+            MasterClusterBlock block = blocks.get(blockIds[i]);
+            SplitResult split = splits[i];
+            block.lc.addGlobalNLSSS(split.leftN, split.leftLS, split.leftSS, count == 1);
+            block.rc.addGlobalNLSSS(split.rightN, split.rightLS, split.rightSS, count == 1);
+            if (count == workerIds.size()) { //all the workerIds have replied
+                block.lc.computeGlobalSSQ();
+                block.rc.computeGlobalSSQ();
+                updateCHindeAfterSplit(block);
+                splittingQueue.offer(block.lc);
+                splittingQueue.offer(block.rc);
+                splittingBlocks--;
+                completed = true;
+            }
         }
-        receivedSplitInfo.put(blockId, count);
-        MasterClusterBlock block = blocks.get(blockId);
-        block.lc.addGlobalNLSSS(split.leftN, split.leftLS, split.leftSS, count == 1);
-        block.rc.addGlobalNLSSS(split.rightN, split.rightLS, split.rightSS, count == 1);
-        if (count == workerIds.size()) { //all the workerIds have replied
-            block.lc.computeGlobalSSQ();
-            block.rc.computeGlobalSSQ();
-            updateCHindeAfterSplit(block);
-            splittingQueue.offer(block.lc);
-            splittingQueue.offer(block.rc);
-            startSplitNextEnqueuedBlock();
+        if (completed) {
+            continueDivisivePhase();
         }
     }
 
@@ -328,6 +538,12 @@ public class MasterExecution {
     public void updateCHindeAfterSplit(MasterClusterBlock block) {
         double deltaSSQ = block.globalSSQ - block.lc.globalSSQ - block.rc.globalSSQ;
         block.actualDeltaSSQ = deltaSSQ;
+        if (!options.levelSynchronous) { //otherwise, the index was updated when the split was decided
+            updateCHindex(deltaSSQ);
+        }
+    }
+
+    private void updateCHindex(double deltaSSQ) {
         BCSSQ += deltaSSQ;
         SSQ -= deltaSSQ;
         chIndex = (BCSSQ * (root.globalN - nLeaves)) / (SSQ * (nLeaves - 1));
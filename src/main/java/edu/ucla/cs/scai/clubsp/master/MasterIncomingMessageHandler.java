@@ -16,8 +16,7 @@
 package edu.ucla.cs.scai.clubsp.master;
 
 import edu.ucla.cs.scai.clubsp.messages.ClubsPMessage;
-import edu.ucla.cs.scai.clubsp.messages.ComputeBestSplitResponse;
-import edu.ucla.cs.scai.clubsp.messages.ComputeValleyCriterionResponse;
+import edu.ucla.cs.scai.clubsp.messages.EvaluateBlockResponse;
 import edu.ucla.cs.scai.clubsp.messages.ExecutionMessage;
 import edu.ucla.cs.scai.clubsp.messages.FinalRefinementResponse;
 import edu.ucla.cs.scai.clubsp.messages.InitRootResponse;
@@ -62,30 +61,30 @@ public class MasterIncomingMessageHandler extends Thread {
                 master.sendMessage(id, new WorkerConnectionResponse(id));
             } else if (msg instanceof StartClusteringRequest) {
                 StartClusteringRequest c = (StartClusteringRequest) msg;
-                master.initExecution(c.dataSetId, 1);
+                master.initExecution(c.dataSetId, c.scaleFactor, c.options);
             } else if (msg instanceof StartGenerationRequest) {
                 StartGenerationRequest c = (StartGenerationRequest) msg;
                 master.initGeneration(c.nOfTuples, c.dimensionality, c.domainWidth, c.nOfClusters, c.noiseRatio);
             } else if (msg instanceof ExecutionMessage) {
-                MasterExecution ex = master.masterExecutions.get(((ExecutionMessage) msg).executionId);
-                if (msg instanceof LoadDataSetResponse) {
+                MasterExecution ex = master.getExecution(((ExecutionMessage) msg).executionId);
+                if (ex == null) {
+                    //the execution was aborted, and the workers can still send the messages of the steps in progress
+                    System.out.println("Execution " + ((ExecutionMessage) msg).executionId + " not found, the message is ignored");
+                } else if (msg instanceof LoadDataSetResponse) {
                     LoadDataSetResponse c = (LoadDataSetResponse) msg;
-                    ex.increaseReceivedLocalDoamins(c.localDomain);
+                    ex.increaseReceivedLocalDoamins(c.localDomain, c.localDictionary);
                 } else if (msg instanceof InitRootResponse) {
                     InitRootResponse c = (InitRootResponse) msg;
                     ex.increaseReceivedRootInfo(c.n, c.LS, c.SS);
                 } else if (msg instanceof ReceiveMarginalsResponse) {
                     ReceiveMarginalsResponse c = (ReceiveMarginalsResponse) msg;
-                    ex.increaseReceivedMarginals(c.blockId, c.dimension);
-                } else if (msg instanceof ComputeBestSplitResponse) {
-                    ComputeBestSplitResponse c = (ComputeBestSplitResponse) msg;
-                    ex.increaseReceivedBestSplits(c.blockId, c.dimension, c.split);
-                } else if (msg instanceof ComputeValleyCriterionResponse) {
-                    ComputeValleyCriterionResponse c = (ComputeValleyCriterionResponse) msg;
-                    ex.increaseReceivedValleyCriterion(c.blockId, c.dimension, c.satisfied);
+                    ex.increaseReceivedMarginals(c.blockIds, c.dimension);
+                } else if (msg instanceof EvaluateBlockResponse) {
+                    EvaluateBlockResponse c = (EvaluateBlockResponse) msg;
+                    ex.increaseReceivedEvaluation(c.blockIds, c.dimensions, c.splits, c.valleyCriterion);
                 } else if (msg instanceof SplitResponse) {
                     SplitResponse c = (SplitResponse) msg;
-                    ex.increaseReceivedSplit(c.blockId, c.split);
+                    ex.increaseReceivedSplit(c.blockIds, c.splits);
                 } else if (msg instanceof RestrictedCountResponse) {
                     RestrictedCountResponse c = (RestrictedCountResponse) msg;
                     ex.increaseReceivedRestrictedCount(c.blockIds, c.restrictedCount);
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.messages;
+
+/**
+ * Sent by the master to all the workers when an execution is abandoned, e.g.,
+ * because the catalog entry of its data set does not match the data. The
+ * workers release the data set and ignore the following messages of the
+ * execution.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class AbortExecutionRequest extends ExecutionMessage {
+
+    public AbortExecutionRequest(String executionId) {
+        super(executionId);
+    }
+
+    @Override
+    public String toString() {
+        return "AbortExecutionRequest{" + "executionId=" + executionId + '}';
+    }
+
+}
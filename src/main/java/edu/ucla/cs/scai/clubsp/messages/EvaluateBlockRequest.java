@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.messages;
+
+import java.util.Arrays;
+
+/**
+ * Asks a worker the best splits and the valley criterion of several blocks,
+ * on the dimensions whose global marginals are owned by the worker.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class EvaluateBlockRequest extends ExecutionMessage {
+
+    public int[] blockIds;
+    public int[] dimensions;
+    public int[] globalN;
+    public double[][] globalLS;
+    public double[][] globalSS;
+    public double delta; //the parameter of the valley criterion;
+
+    public EvaluateBlockRequest(String executionId, int[] blockIds, int[] dimensions, int[] globalN, double[][] globalLS, double[][] globalSS, double delta) {
+        super(executionId);
+        this.blockIds = blockIds;
+        this.dimensions = dimensions;
+        this.globalN = globalN;
+        this.globalLS = globalLS;
+        this.globalSS = globalSS;
+        this.delta = delta;
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluateBlockRequest{" + "blockIds=" + Arrays.toString(blockIds) + ", dimensions=" + Arrays.toString(dimensions) + ", globalN=" + Arrays.toString(globalN) + ", delta=" + delta + '}';
+    }
+
+}
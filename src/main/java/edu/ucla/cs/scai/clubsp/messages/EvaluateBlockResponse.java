@@ -0,0 +1,47 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.messages;
+
+import edu.ucla.cs.scai.clubsp.commons.BestSplitResult;
+import java.util.Arrays;
+
+/**
+ * splits[i][j] and valleyCriterion[i][j] are the best split and the valley
+ * criterion of block blockIds[i] on dimensions[j].
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class EvaluateBlockResponse extends ExecutionMessage {
+
+    public int[] blockIds;
+    public int[] dimensions;
+    public BestSplitResult[][] splits;
+    public boolean[][] valleyCriterion;
+
+    public EvaluateBlockResponse(String executionId, int[] blockIds, int[] dimensions, BestSplitResult[][] splits, boolean[][] valleyCriterion) {
+        super(executionId);
+        this.blockIds = blockIds;
+        this.dimensions = dimensions;
+        this.splits = splits;
+        this.valleyCriterion = valleyCriterion;
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluateBlockResponse{" + "blockIds=" + Arrays.toString(blockIds) + ", dimensions=" + Arrays.toString(dimensions) + ", splits=" + Arrays.deepToString(splits) + ", valleyCriterion=" + Arrays.deepToString(valleyCriterion) + '}';
+    }
+
+}
@@ -15,26 +15,26 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import java.util.Arrays;
+
 /**
+ * Sent by the master to all the workers when blocks become clusters, i.e.,
+ * they will not be split anymore and their marginals can be released.
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
-public class ComputeValleyCriterionResponse extends ExecutionMessage {
+public class FinalizeBlockRequest extends ExecutionMessage {
 
-    public int blockId;
-    public int dimension;
-    public boolean satisfied;
+    public int[] blockIds;
 
-    public ComputeValleyCriterionResponse(String executionId, int blockId, int dimension, boolean satisfied) {
+    public FinalizeBlockRequest(String executionId, int[] blockIds) {
         super(executionId);
-        this.blockId = blockId;
-        this.dimension = dimension;
-        this.satisfied = satisfied;
+        this.blockIds = blockIds;
     }
 
     @Override
     public String toString() {
-        return "ComputeValleyCriterionResponse{" + "blockId=" + blockId + ", dimension=" + dimension + ", satisfied=" + satisfied + '}';
+        return "FinalizeBlockRequest{" + "blockIds=" + Arrays.toString(blockIds) + '}';
     }
 
 }
@@ -15,6 +15,7 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import edu.ucla.cs.scai.clubsp.commons.CoordinateDictionary;
 import edu.ucla.cs.scai.clubsp.commons.Range;
 
 /**
@@ -24,15 +25,17 @@ import edu.ucla.cs.scai.clubsp.commons.Range;
 public class InitRootRequest extends ExecutionMessage {
 
     public Range globalDomain;
+    public CoordinateDictionary globalDictionary; //null if the execution does not use a dictionary
 
-    public InitRootRequest(String executionId, Range globalDomain) {
+    public InitRootRequest(String executionId, Range globalDomain, CoordinateDictionary globalDictionary) {
         super(executionId);
         this.globalDomain = globalDomain;
+        this.globalDictionary = globalDictionary;
     }
 
     @Override
     public String toString() {
-        return "InitRootRequest{" + "globalDomain=" + globalDomain + '}';
+        return "InitRootRequest{" + "globalDomain=" + globalDomain + ", globalDictionary=" + globalDictionary + '}';
     }
 
 }
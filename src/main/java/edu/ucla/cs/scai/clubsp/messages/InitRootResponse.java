@@ -15,6 +15,8 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import edu.ucla.cs.scai.clubsp.commons.Int128Array;
+
 /**
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
@@ -22,9 +24,10 @@ package edu.ucla.cs.scai.clubsp.messages;
 public class InitRootResponse extends ExecutionMessage {
 
     public int n;
-    public double[] LS, SS;
+    public long[] LS;
+    public Int128Array SS;
 
-    public InitRootResponse(String executionId, int n, double[] LS, double[] SS) {
+    public InitRootResponse(String executionId, int n, long[] LS, Int128Array SS) {
         super(executionId);
         this.n = n;
         this.LS = LS;
@@ -15,7 +15,10 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import edu.ucla.cs.scai.clubsp.commons.ExecutionOptions;
+import edu.ucla.cs.scai.clubsp.commons.Range;
 import edu.ucla.cs.scai.clubsp.commons.RegisteredWorker;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /**
@@ -27,18 +30,24 @@ public class LoadDataSetRequest extends ClubsPMessage {
     public String dataSetId;
     public String executionId;
     public HashMap<String, RegisteredWorker> workers = new HashMap<>();
+    public ArrayList<String> workerIds; //the workers of the execution, in the order used by the master to plan the exchange of marginals
     public double scaleFactor = 1;
+    public ExecutionOptions options;
+    public Range globalDomain; //null if not known in advance
 
-    public LoadDataSetRequest(String dataSetId, String executionId, HashMap<String, RegisteredWorker> workers, double scaleFactor) {
+    public LoadDataSetRequest(String dataSetId, String executionId, HashMap<String, RegisteredWorker> workers, ArrayList<String> workerIds, double scaleFactor, ExecutionOptions options, Range globalDomain) {
         this.dataSetId = dataSetId;
         this.executionId = executionId;
         this.workers = workers;
+        this.workerIds = workerIds;
         this.scaleFactor = scaleFactor;
+        this.options = options;
+        this.globalDomain = globalDomain;
     }
 
     @Override
     public String toString() {
-        return "LoadDataSetRequest{" + "dataSetId=" + dataSetId + ", executionId=" + executionId + ", workers=" + workers + ", scaleFactor=" + scaleFactor + '}';
+        return "LoadDataSetRequest{" + "dataSetId=" + dataSetId + ", executionId=" + executionId + ", workers=" + workers + ", workerIds=" + workerIds + ", scaleFactor=" + scaleFactor + ", options=" + options + ", globalDomain=" + globalDomain + '}';
     }
     
     
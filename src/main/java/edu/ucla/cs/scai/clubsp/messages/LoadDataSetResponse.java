@@ -15,6 +15,7 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import edu.ucla.cs.scai.clubsp.commons.CoordinateDictionary;
 import edu.ucla.cs.scai.clubsp.commons.Range;
 
 /**
@@ -24,15 +25,17 @@ import edu.ucla.cs.scai.clubsp.commons.Range;
 public class LoadDataSetResponse extends ExecutionMessage {
 
     public Range localDomain;
+    public CoordinateDictionary localDictionary; //null if the execution does not use a dictionary
 
-    public LoadDataSetResponse(String executionId, Range localDomain) {
+    public LoadDataSetResponse(String executionId, Range localDomain, CoordinateDictionary localDictionary) {
         super(executionId);
         this.localDomain = localDomain;
+        this.localDictionary = localDictionary;
     }
 
     @Override
     public String toString() {
-        return "LoadDataSetResponse{" + "localDomain=" + localDomain + '}';
+        return "LoadDataSetResponse{" + "localDomain=" + localDomain + ", localDictionary=" + localDictionary + '}';
     }
 
 }
@@ -15,26 +15,29 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistribution;
+import java.util.Arrays;
+
 /**
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
-public class ComputeValleyCriterionRequest extends ExecutionMessage {
+public class ReceiveMarginalWindowsRequest extends ExecutionMessage {
 
     public int blockId;
     public int dimension;
-    public double delta;
+    public MarginalDistribution[] windows;
 
-    public ComputeValleyCriterionRequest(String executionId, int blockId, int dimension, double delta) {
+    public ReceiveMarginalWindowsRequest(String executionId, int blockId, int dimension, MarginalDistribution[] windows) {
         super(executionId);
         this.blockId = blockId;
         this.dimension = dimension;
-        this.delta=delta;
+        this.windows = windows;
     }
 
     @Override
     public String toString() {
-        return "ComputeValleyCriterionRequest{" + "blockId=" + blockId + ", dimension=" + dimension + ", delta=" + delta + '}';
+        return "ReceiveMarginalWindowsRequest{" + "blockId=" + blockId + ", dimension=" + dimension + ", windows=" + Arrays.toString(windows) + '}';
     }
 
 }
@@ -16,29 +16,29 @@
 package edu.ucla.cs.scai.clubsp.messages;
 
 import edu.ucla.cs.scai.clubsp.commons.MarginalDistribution;
+import java.util.Arrays;
 
 /**
+ * marginals[i] are the marginals of block blockIds[i].
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
 public class ReceiveMarginalsRequest extends ExecutionMessage {
 
-    public int blockId;
+    public int[] blockIds;
     public int dimension;
-    public MarginalDistribution marginals;
+    public MarginalDistribution[] marginals;
 
-    public ReceiveMarginalsRequest(String executionId, int blockId, int dimension, MarginalDistribution marginals) {
+    public ReceiveMarginalsRequest(String executionId, int[] blockIds, int dimension, MarginalDistribution[] marginals) {
         super(executionId);
-        this.blockId = blockId;
+        this.blockIds = blockIds;
         this.dimension = dimension;
         this.marginals = marginals;
     }
 
     @Override
     public String toString() {
-        return "ReceiveMarginalsRequest{" + "blockId=" + blockId + ", dimension=" + dimension + ", marginals=" + marginals + '}';
+        return "ReceiveMarginalsRequest{" + "blockIds=" + Arrays.toString(blockIds) + ", dimension=" + dimension + ", marginals=" + Arrays.toString(marginals) + '}';
     }
-    
-    
 
 }
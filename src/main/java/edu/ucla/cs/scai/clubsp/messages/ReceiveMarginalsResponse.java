@@ -15,24 +15,26 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import java.util.Arrays;
+
 /**
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
 public class ReceiveMarginalsResponse extends ExecutionMessage {
 
-    public int blockId;
+    public int[] blockIds;
     public int dimension;
 
-    public ReceiveMarginalsResponse(String executionId, int blockId, int dimension) {
+    public ReceiveMarginalsResponse(String executionId, int[] blockIds, int dimension) {
         super(executionId);
-        this.blockId = blockId;
+        this.blockIds = blockIds;
         this.dimension = dimension;
     }
 
     @Override
     public String toString() {
-        return "ReceiveMarginalsResponse{" + "blockId=" + blockId + ", dimension=" + dimension + '}';
+        return "ReceiveMarginalsResponse{" + "blockIds=" + Arrays.toString(blockIds) + ", dimension=" + dimension + '}';
     }
 
 }
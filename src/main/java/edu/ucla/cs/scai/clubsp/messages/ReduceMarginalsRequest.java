@@ -15,28 +15,28 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
-import edu.ucla.cs.scai.clubsp.commons.BestSplitResult;
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistribution;
 
 /**
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
-public class ComputeBestSplitResponse extends ExecutionMessage {
+public class ReduceMarginalsRequest extends ExecutionMessage {
 
     public int blockId;
     public int dimension;
-    public BestSplitResult split;
+    public MarginalDistribution marginals; //the sum of the marginals of the sender and of the workers below it in the reduction tree
 
-    public ComputeBestSplitResponse(String executionId, int blockId, int dimension, BestSplitResult split) {
+    public ReduceMarginalsRequest(String executionId, int blockId, int dimension, MarginalDistribution marginals) {
         super(executionId);
         this.blockId = blockId;
         this.dimension = dimension;
-        this.split=split;
+        this.marginals = marginals;
     }
 
     @Override
     public String toString() {
-        return "ComputeBestSplitResponse{" + "blockId=" + blockId + ", dimension=" + dimension + ", split=" + split + '}';
+        return "ReduceMarginalsRequest{" + "blockId=" + blockId + ", dimension=" + dimension + ", marginals=" + marginals + '}';
     }
 
 }
@@ -15,32 +15,32 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import java.util.Arrays;
+
 /**
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
-public class ComputeBestSplitRequest extends ExecutionMessage {
+public class SendMarginalWindowsRequest extends ExecutionMessage {
 
     public int blockId;
     public int dimension;
-    public int globalN;
-    public double[] globalLS;
-    public double[] globalSS;
+    public int[] begin;
+    public int[] end;
+    public String receiverId;
 
-    public ComputeBestSplitRequest(String executionId, int blockId, int dimension, int globalN, double[] globalLS, double[] globalSS) {
+    public SendMarginalWindowsRequest(String executionId, int blockId, int dimension, int[] begin, int[] end, String receiverId) {
         super(executionId);
         this.blockId = blockId;
         this.dimension = dimension;
-        this.globalN = globalN;
-        this.globalLS = globalLS;
-        this.globalSS = globalSS;
+        this.begin = begin;
+        this.end = end;
+        this.receiverId = receiverId;
     }
 
     @Override
     public String toString() {
-        return "ComputeBestSplitRequest{" + "blockId=" + blockId + ", dimension=" + dimension + ", globalN=" + globalN + ", globalLS=" + globalLS + ", globalSS=" + globalSS + '}';
+        return "SendMarginalWindowsRequest{" + "blockId=" + blockId + ", dimension=" + dimension + ", begin=" + Arrays.toString(begin) + ", end=" + Arrays.toString(end) + ", receiverId=" + receiverId + '}';
     }
-    
-    
 
 }
@@ -15,26 +15,29 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import java.util.Arrays;
+
 /**
+ * The marginals of all the blocks are sent with one message.
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
 public class SendMarginalsRequest extends ExecutionMessage {
 
-    public int blockId;
+    public int[] blockIds;
     public int dimension;
     public String receiverId;
 
-    public SendMarginalsRequest(String executionId, int blockId, int dimension, String receiverId) {
+    public SendMarginalsRequest(String executionId, int[] blockIds, int dimension, String receiverId) {
         super(executionId);
-        this.blockId = blockId;
+        this.blockIds = blockIds;
         this.dimension = dimension;
         this.receiverId = receiverId;
     }
 
     @Override
     public String toString() {
-        return "SendMarginalsRequest{" + "blockId=" + blockId + ", dimension=" + dimension + ", receiverId=" + receiverId + '}';
+        return "SendMarginalsRequest{" + "blockIds=" + Arrays.toString(blockIds) + ", dimension=" + dimension + ", receiverId=" + receiverId + '}';
     }
 
 }
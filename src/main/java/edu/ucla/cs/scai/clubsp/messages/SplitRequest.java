@@ -15,27 +15,32 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import java.util.Arrays;
+
 /**
+ * The splits of several blocks, decided by the master: block blockIds[i] is
+ * split on splitDimensions[i] at splitPositions[i] into leftIds[i] and
+ * rightIds[i].
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
 public class SplitRequest extends ExecutionMessage {
 
-    public int blockId;
-    public int splitDimension;
-    public int splitPosition;
-    public int leftId, rightId;
-    public int globalN;
-    public double[] globalLS;
-    public double[] globalSS;
+    public int[] blockIds;
+    public int[] splitDimensions;
+    public int[] splitPositions;
+    public int[] leftIds, rightIds;
+    public int[] globalN;
+    public double[][] globalLS;
+    public double[][] globalSS;
 
-    public SplitRequest(String executionId, int blockId, int splitDimension, int splitPosition, int leftId, int rightId, int globalN, double[] globalLS, double[] globalSS) {
+    public SplitRequest(String executionId, int[] blockIds, int[] splitDimensions, int[] splitPositions, int[] leftIds, int[] rightIds, int[] globalN, double[][] globalLS, double[][] globalSS) {
         super(executionId);
-        this.blockId = blockId;
-        this.splitDimension = splitDimension;
-        this.splitPosition = splitPosition;
-        this.leftId = leftId;
-        this.rightId = rightId;
+        this.blockIds = blockIds;
+        this.splitDimensions = splitDimensions;
+        this.splitPositions = splitPositions;
+        this.leftIds = leftIds;
+        this.rightIds = rightIds;
         this.globalN = globalN;
         this.globalLS = globalLS;
         this.globalSS = globalSS;
@@ -43,7 +48,7 @@ public class SplitRequest extends ExecutionMessage {
 
     @Override
     public String toString() {
-        return "SplitRequest{" + "blockId=" + blockId + ", splitDimension=" + splitDimension + ", splitPosition=" + splitPosition + ", leftId=" + leftId + ", rightId=" + rightId + ", globalN=" + globalN + ", globalLS=" + globalLS + ", globalSS=" + globalSS + '}';
+        return "SplitRequest{" + "blockIds=" + Arrays.toString(blockIds) + ", splitDimensions=" + Arrays.toString(splitDimensions) + ", splitPositions=" + Arrays.toString(splitPositions) + ", leftIds=" + Arrays.toString(leftIds) + ", rightIds=" + Arrays.toString(rightIds) + '}';
     }
 
 }
@@ -16,25 +16,27 @@
 package edu.ucla.cs.scai.clubsp.messages;
 
 import edu.ucla.cs.scai.clubsp.commons.SplitResult;
+import java.util.Arrays;
 
 /**
+ * splits[i] is the result of the split of block blockIds[i].
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
 public class SplitResponse extends ExecutionMessage {
 
-    public int blockId;
-    public SplitResult split;
+    public int[] blockIds;
+    public SplitResult[] splits;
 
-    public SplitResponse(String executionId, int blockId, SplitResult split) {
+    public SplitResponse(String executionId, int[] blockIds, SplitResult[] splits) {
         super(executionId);
-        this.blockId = blockId;
-        this.split = split;
+        this.blockIds = blockIds;
+        this.splits = splits;
     }
 
     @Override
     public String toString() {
-        return "SplitResponse{" + "blockId=" + blockId + ", split=" + split + '}';
+        return "SplitResponse{" + "blockIds=" + Arrays.toString(blockIds) + ", splits=" + Arrays.toString(splits) + '}';
     }
 
 }
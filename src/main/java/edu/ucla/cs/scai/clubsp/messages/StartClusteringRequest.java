@@ -15,6 +15,8 @@
  */
 package edu.ucla.cs.scai.clubsp.messages;
 
+import edu.ucla.cs.scai.clubsp.commons.ExecutionOptions;
+
 /**
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
@@ -22,14 +24,22 @@ package edu.ucla.cs.scai.clubsp.messages;
 public class StartClusteringRequest extends ClubsPMessage {
 
     public String dataSetId;
+    public double scaleFactor = 1;
+    public ExecutionOptions options = new ExecutionOptions();
 
     public StartClusteringRequest(String dataSetId) {
         this.dataSetId = dataSetId;
     }
 
+    public StartClusteringRequest(String dataSetId, double scaleFactor, ExecutionOptions options) {
+        this.dataSetId = dataSetId;
+        this.scaleFactor = scaleFactor;
+        this.options = options;
+    }
+
     @Override
     public String toString() {
-        return "StartClusteringRequest{" + "dataSetId=" + dataSetId + '}';
+        return "StartClusteringRequest{" + "dataSetId=" + dataSetId + ", scaleFactor=" + scaleFactor + ", options=" + options + '}';
     }
 
 }
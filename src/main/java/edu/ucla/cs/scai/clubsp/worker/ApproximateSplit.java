@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistribution;
+
+/**
+ * The state of an approximate best split search on one dimension of a block.
+ * The candidate splits are first evaluated on the global marginals with merged
+ * bins, then the most promising buckets are refined with the exact marginals of
+ * those bins only, which are collected from all the workers of the execution.
+ * The windows are ranges of bins [begin[w], end[w]], sorted and disjoint.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ApproximateSplit {
+
+    final int globalN;
+    final double[] globalLS;
+    final MarginalDistribution coarseMarginals; //the global marginals, with 2^shift bins for every entry
+    final int shift;
+    final int[] begin, end;
+    final MarginalDistribution[] windows; //the exact global marginals of the windows, summed as they arrive
+    int missingWorkers; //the workers whose windows were not received yet
+
+    ApproximateSplit(int globalN, double[] globalLS, MarginalDistribution coarseMarginals, int shift, int[] begin, int[] end, int nWorkers) {
+        this.globalN = globalN;
+        this.globalLS = globalLS;
+        this.coarseMarginals = coarseMarginals;
+        this.shift = shift;
+        this.begin = begin;
+        this.end = end;
+        windows = new MarginalDistribution[begin.length];
+        missingWorkers = nWorkers;
+    }
+
+    public int[] getBegin() {
+        return begin;
+    }
+
+    public int[] getEnd() {
+        return end;
+    }
+
+    //adds the windows of a worker, and returns true if they were the last ones
+    public synchronized boolean addWindows(MarginalDistribution[] workerWindows) {
+        for (int w = 0; w < windows.length; w++) {
+            if (windows[w] == null) {
+                windows[w] = workerWindows[w];
+            } else {
+                windows[w].add(workerWindows[w]);
+            }
+        }
+        missingWorkers--;
+        return missingWorkers == 0;
+    }
+}
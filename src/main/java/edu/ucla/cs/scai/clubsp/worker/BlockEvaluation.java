@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.BestSplitResult;
+import java.util.HashMap;
+
+/**
+ * The best splits and the valley criterion of some blocks on the dimensions
+ * whose global marginals are owned by a worker. The valley criterion is computed
+ * when the global marginals of the dimension are complete, while the best
+ * splits can be completed later, when they are approximated and the exact
+ * windows of the other workers are needed. The result is sent to the master
+ * when all the best splits are known.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class BlockEvaluation {
+
+    final int[] blockIds;
+    final int[] dimensions;
+    final BestSplitResult[][] splits; //splits[i][j] is the best split of blockIds[i] on dimensions[j]
+    final boolean[][] valleyCriterion;
+    final double delta; //the parameter of the valley criterion
+    //the arrays up to this length are scanned to find the position of a key, the longer ones are indexed
+    static final int MAX_SCANNED_LENGTH = 16;
+    //the position of a block id in blockIds, and of a dimension in dimensions - null if the array is short
+    //the ids of the blocks are not dense in a request, so the positions are not stored in arrays indexed by id
+    final HashMap<Integer, Integer> blockIndex;
+    final HashMap<Integer, Integer> dimensionIndex;
+    int missingSplits;
+
+    BlockEvaluation(int[] blockIds, int[] dimensions, double delta) {
+        this.blockIds = blockIds;
+        this.dimensions = dimensions;
+        this.delta = delta;
+        splits = new BestSplitResult[blockIds.length][dimensions.length];
+        valleyCriterion = new boolean[blockIds.length][dimensions.length];
+        missingSplits = blockIds.length * dimensions.length;
+        blockIndex = buildIndex(blockIds);
+        dimensionIndex = buildIndex(dimensions);
+    }
+
+    private static HashMap<Integer, Integer> buildIndex(int[] keys) {
+        if (keys.length <= MAX_SCANNED_LENGTH) {
+            return null;
+        }
+        HashMap<Integer, Integer> res = new HashMap<>(2 * keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            res.put(keys[i], i);
+        }
+        return res;
+    }
+
+    private static int getPosition(int[] keys, HashMap<Integer, Integer> index, int key) {
+        if (index != null) {
+            return index.get(key);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Key " + key + " not found");
+    }
+
+    public synchronized void setValleyCriterion(int blockId, int dimension, boolean satisfied) {
+        valleyCriterion[getPosition(blockIds, blockIndex, blockId)][getPosition(dimensions, dimensionIndex, dimension)] = satisfied;
+    }
+
+    //returns true if this was the last missing split
+    public synchronized boolean setSplit(int blockId, int dimension, BestSplitResult split) {
+        splits[getPosition(blockIds, blockIndex, blockId)][getPosition(dimensions, dimensionIndex, dimension)] = split;
+        missingSplits--;
+        return missingSplits == 0;
+    }
+}
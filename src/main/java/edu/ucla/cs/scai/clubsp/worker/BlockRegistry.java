@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.IntObjectMap;
+import java.util.ArrayList;
+
+/**
+ * The blocks of an execution, indexed by their id. The registry can be
+ * accessed concurrently by the threads handling the messages, so that the
+ * requests on different blocks are served in parallel. The ids are assigned
+ * by a sequence, so the blocks are stored in an array indexed by id.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class BlockRegistry {
+
+    final IntObjectMap<WorkerClusterBlock> blocks = new IntObjectMap<>();
+
+    public synchronized WorkerClusterBlock get(int blockId) {
+        return blocks.get(blockId);
+    }
+
+    public synchronized void put(WorkerClusterBlock block) {
+        blocks.put(block.getId(), block);
+    }
+
+    public synchronized int size() {
+        return blocks.size();
+    }
+
+    //the blocks which were not split
+    public synchronized ArrayList<WorkerClusterBlock> getLeaves() {
+        ArrayList<WorkerClusterBlock> res = new ArrayList<>();
+        for (WorkerClusterBlock block : blocks.values()) {
+            if (block.isLeaf()) {
+                res.add(block);
+            }
+        }
+        return res;
+    }
+}
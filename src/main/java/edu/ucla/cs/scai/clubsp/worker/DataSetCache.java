@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.Range;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps the data sets loaded by a worker, so that executions on the same data
+ * set with the same scale factor do not load the file again. Every execution
+ * holds a reference to its data set until it finishes; data sets which are not
+ * referenced are evicted in least-recently-used order when the memory they use
+ * exceeds the budget.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class DataSetCache {
+
+    final Worker worker;
+    long budget; //bytes
+    long usedMemory;
+    final LinkedHashMap<String, LoadedDataSet> dataSets = new LinkedHashMap<>(16, 0.75f, true); //in access order
+    final HashMap<String, LoadingLock> loadingLocks = new HashMap<>(); //only for the keys being acquired
+
+    //serializes the loading of a data set - it is removed when no execution is acquiring the data set
+    static class LoadingLock {
+
+        int users;
+    }
+
+    public DataSetCache(Worker worker, long budget) {
+        this.worker = worker;
+        this.budget = budget;
+    }
+
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    private synchronized LoadingLock getLoadingLock(String key) {
+        LoadingLock lock = loadingLocks.get(key);
+        if (lock == null) {
+            lock = new LoadingLock();
+            loadingLocks.put(key, lock);
+        }
+        lock.users++;
+        return lock;
+    }
+
+    private synchronized void releaseLoadingLock(String key, LoadingLock lock) {
+        lock.users--;
+        if (lock.users == 0) {
+            loadingLocks.remove(key);
+        }
+    }
+
+    //returns the loaded data set, loading it if it is not cached or if the file was modified after it was loaded
+    //the data set must be released when it is not used anymore
+    //if weighted is true, identical points are merged into one weighted point
+    //if rootDomain is not null and a text data set must be loaded, the marginals of the root are built while loading
+    public LoadedDataSet acquire(String dataSetId, double scaleFactor, boolean weighted, Range rootDomain) throws IOException {
+        String key = dataSetId + "_" + scaleFactor + (weighted ? "_weighted" : "");
+        File file = new File(worker.datasetsPath + dataSetId);
+        //concurrent executions on the same data set wait for the first one to load it
+        LoadingLock lock = getLoadingLock(key);
+        try {
+            synchronized (lock) {
+                long lastModified = file.lastModified();
+                long length = file.length();
+                synchronized (this) {
+                    LoadedDataSet res = dataSets.get(key);
+                    if (res != null) {
+                        if (res.fileLastModified == lastModified && res.fileLength == length) {
+                            res.references++;
+                            System.out.println("Data set " + dataSetId + " found in cache");
+                            return res;
+                        }
+                        remove(res);
+                    }
+                }
+                DataSetLoader loader = new DataSetLoader(file.getPath(), scaleFactor, worker.computePool, worker.offHeap);
+                loader.setWeighted(weighted);
+                loader.setRootDomain(rootDomain);
+                LoadedDataSet res = loader.load();
+                res.key = key;
+                res.fileLastModified = lastModified;
+                res.fileLength = length;
+                res.references = 1;
+                synchronized (this) {
+                    res.cached = true;
+                    dataSets.put(key, res);
+                    usedMemory += res.getMemorySize();
+                    evict();
+                }
+                return res;
+            }
+        } finally {
+            releaseLoadingLock(key, lock);
+        }
+    }
+
+    public synchronized void release(LoadedDataSet dataSet) {
+        dataSet.references--;
+        if (dataSet.references == 0 && !dataSet.cached) {
+            //it was removed from the cache while in use
+            usedMemory -= dataSet.getMemorySize();
+        }
+        evict();
+    }
+
+    private void remove(LoadedDataSet dataSet) {
+        dataSets.remove(dataSet.key);
+        dataSet.cached = false;
+        if (dataSet.references == 0) {
+            usedMemory -= dataSet.getMemorySize();
+        }
+    }
+
+    //removes the least recently used data sets, which are not in use, until the budget is respected
+    private void evict() {
+        for (Iterator<LoadedDataSet> it = dataSets.values().iterator(); it.hasNext() && usedMemory > budget;) {
+            LoadedDataSet dataSet = it.next();
+            if (dataSet.references == 0) {
+                it.remove();
+                dataSet.cached = false;
+                usedMemory -= dataSet.getMemorySize();
+            }
+        }
+    }
+}
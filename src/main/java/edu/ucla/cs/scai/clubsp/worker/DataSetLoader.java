@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.ColumnarDataSetFile;
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistributionWithSquares;
+import edu.ucla.cs.scai.clubsp.commons.Range;
+import edu.ucla.cs.scai.clubsp.commons.Utils;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Loads a data set file, either in text or in columnar format, into a point
+ * store. If the global domain is known before loading, the marginals of the
+ * root of a text data set are built while the parsed points are copied into
+ * the store, so that the root does not require a further scan of the data.
+ * The columnar files are copied (or mapped) one column at a time, so their
+ * root is built by the execution with the usual scan.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class DataSetLoader {
+
+    final String fileName;
+    final double scaleFactor;
+    final ExecutorService pool;
+    final boolean offHeap;
+    boolean weighted;
+    Range rootDomain;
+    MarginalDistributionWithSquares[] rootMarginals;
+
+    public DataSetLoader(String fileName, double scaleFactor, ExecutorService pool, boolean offHeap) {
+        this.fileName = fileName;
+        this.scaleFactor = scaleFactor;
+        this.pool = pool;
+        this.offHeap = offHeap;
+    }
+
+    //if true, identical points are stored once, with a weight - the resulting store is kept in the heap
+    public void setWeighted(boolean weighted) {
+        this.weighted = weighted;
+    }
+
+    //if not null, the marginals of the root with the given domain are built while loading
+    public void setRootDomain(Range rootDomain) {
+        this.rootDomain = rootDomain;
+    }
+
+    public LoadedDataSet load() throws IOException {
+        LoadedDataSet res;
+        if (ColumnarDataSetFile.isColumnar(fileName)) {
+            res = loadColumnarDataSet();
+        } else {
+            res = loadTextDataSet();
+        }
+        PointStore store = res.getStore();
+        if (weighted) {
+            long start = System.currentTimeMillis();
+            store = WeightedPointStore.deduplicate(res.getStore());
+            System.out.println(res.getStore().size() + " points merged into " + store.size() + " weighted points in " + (System.currentTimeMillis() - start) + " msec");
+        }
+        return new LoadedDataSet(store, res.localDomain, rootMarginals == null ? null : rootDomain, rootMarginals);
+    }
+
+    //the marginals of the root are built only if the root domain contains all the points
+    private void initRootMarginals(Range localDomain) {
+        if (rootDomain == null || rootDomain.getDimensionality() != localDomain.getDimensionality() || !rootDomain.contains(localDomain)) {
+            return;
+        }
+        rootMarginals = new MarginalDistributionWithSquares[rootDomain.getDimensionality()];
+        for (int i = 0; i < rootMarginals.length; i++) {
+            rootMarginals[i] = new MarginalDistributionWithSquares(rootDomain.getWidth(i), rootMarginals.length);
+        }
+    }
+
+    private void addToRootMarginals(int[] p) {
+        for (int i = 0; i < p.length; i++) {
+            rootMarginals[i].add(p, p[i] - rootDomain.inf[i]);
+        }
+    }
+
+    //the file is split into chunks which are parsed concurrently
+    //with off-heap storage, the chunks are parsed into direct buffers, and every chunk is released after it is copied
+    //into the store, so that the points are never kept in the heap
+    private LoadedDataSet loadTextDataSet() throws IOException {
+        TextDataSetParser parser = new TextDataSetParser(fileName, scaleFactor);
+        parser.setOffHeap(offHeap);
+        parser.parse(pool);
+        int dimensionality = parser.getDimensionality();
+        int size = parser.getSize();
+        initRootMarginals(parser.getDomain());
+        int[] p = new int[dimensionality];
+        PointStore dataSet;
+        ArrayList<TextDataSetParser.Chunk> chunks = parser.getChunks();
+        if (offHeap) {
+            OffHeapPointStore store = OffHeapPointStore.allocate(dimensionality, size, true);
+            int j = 0;
+            for (int c = 0; c < chunks.size(); c++) {
+                TextDataSetParser.Chunk chunk = chunks.get(c);
+                chunks.set(c, null);
+                for (int k = 0; k < chunk.getSize(); k++) {
+                    chunk.getPoint(k, p);
+                    for (int i = 0; i < dimensionality; i++) {
+                        store.setCoord(j, i, p[i]);
+                    }
+                    if (rootMarginals != null) {
+                        addToRootMarginals(p);
+                    }
+                    j++;
+                }
+            }
+            dataSet = store;
+        } else {
+            int[][] columns = new int[dimensionality][size];
+            int[] filePositions = new int[size];
+            int j = 0;
+            for (TextDataSetParser.Chunk chunk : chunks) {
+                for (int k = 0; k < chunk.getSize(); k++) {
+                    chunk.getPoint(k, p);
+                    for (int i = 0; i < dimensionality; i++) {
+                        columns[i][j] = p[i];
+                    }
+                    if (rootMarginals != null) {
+                        addToRootMarginals(p);
+                    }
+                    filePositions[j] = j;
+                    j++;
+                }
+            }
+            dataSet = new HeapPointStore(columns, filePositions);
+        }
+        return new LoadedDataSet(dataSet, parser.getDomain());
+    }
+
+    //the columns are memory-mapped, and the domain is taken from the header, so no parsing is needed
+    private LoadedDataSet loadColumnarDataSet() throws IOException {
+        try (ColumnarDataSetFile in = ColumnarDataSetFile.open(fileName)) {
+            int dimensionality = in.getDimensionality();
+            int size = in.getSize();
+            //the scaling is monotone, so the scaled bounds of the domain are the bounds of the scaled points
+            int[] inf = new int[dimensionality];
+            int[] sup = new int[dimensionality];
+            boolean unscaled = scaleFactor == 1;
+            for (int i = 0; i < dimensionality; i++) {
+                inf[i] = Utils.scaleCoordinate(in.getDomain().inf[i], scaleFactor);
+                sup[i] = Utils.scaleCoordinate(in.getDomain().sup[i], scaleFactor);
+                //with scale factor 1, only negative coordinates are changed by the scaling
+                unscaled &= in.getDomain().inf[i] >= 0;
+            }
+            PointStore dataSet;
+            if (offHeap && unscaled) {
+                //the points are read directly from the mapped file
+                int nSegments = OffHeapPointStore.getNumberOfSegments(size);
+                IntBuffer[][] columns = new IntBuffer[dimensionality][nSegments];
+                for (int i = 0; i < dimensionality; i++) {
+                    for (int s = 0; s < nSegments; s++) {
+                        columns[i][s] = in.mapColumn(i, s * OffHeapPointStore.SEGMENT_SIZE, OffHeapPointStore.getSegmentLength(size, s));
+                    }
+                }
+                dataSet = OffHeapPointStore.wrap(size, columns);
+            } else if (offHeap) {
+                OffHeapPointStore store = OffHeapPointStore.allocate(dimensionality, size, true);
+                for (int i = 0; i < dimensionality; i++) {
+                    for (int s = 0; s < OffHeapPointStore.getNumberOfSegments(size); s++) {
+                        int from = s * OffHeapPointStore.SEGMENT_SIZE;
+                        IntBuffer column = in.mapColumn(i, from, OffHeapPointStore.getSegmentLength(size, s));
+                        for (int j = 0; j < column.limit(); j++) {
+                            store.setCoord(from + j, i, Utils.scaleCoordinate(column.get(j), scaleFactor));
+                        }
+                    }
+                }
+                dataSet = store;
+            } else {
+                int[][] columns = new int[dimensionality][size];
+                for (int i = 0; i < dimensionality; i++) {
+                    IntBuffer column = in.mapColumn(i);
+                    for (int j = 0; j < size; j++) {
+                        columns[i][j] = Utils.scaleCoordinate(column.get(j), scaleFactor);
+                    }
+                }
+                int[] filePositions = new int[size];
+                for (int j = 0; j < size; j++) {
+                    filePositions[j] = j;
+                }
+                dataSet = new HeapPointStore(columns, filePositions);
+            }
+            Range domain = new Range(inf, sup);
+            return new LoadedDataSet(dataSet, domain);
+        }
+    }
+}
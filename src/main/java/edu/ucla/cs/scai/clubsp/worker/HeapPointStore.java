@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+/**
+ * Columnar point store: one primitive array for every dimension, plus the
+ * array of file positions.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class HeapPointStore implements PointStore {
+
+    final int[][] columns;
+    final int[] filePositions;
+
+    public HeapPointStore(int[][] columns, int[] filePositions) {
+        this.columns = columns;
+        this.filePositions = filePositions;
+    }
+
+    @Override
+    public int size() {
+        return filePositions.length;
+    }
+
+    @Override
+    public int getDimensionality() {
+        return columns.length;
+    }
+
+    @Override
+    public int getCoord(int index, int dimension) {
+        return columns[dimension][index];
+    }
+
+    @Override
+    public void getPoint(int index, int[] p) {
+        for (int i = 0; i < columns.length; i++) {
+            p[i] = columns[i][index];
+        }
+    }
+
+    @Override
+    public int getFilePosition(int index) {
+        return filePositions[index];
+    }
+
+    @Override
+    public int getWeight(int index) {
+        return 1;
+    }
+
+    @Override
+    public int getTotalWeight() {
+        return size();
+    }
+
+    @Override
+    public int getFilePosition(int index, int k) {
+        return getFilePosition(index);
+    }
+
+    @Override
+    public long getMemorySize() {
+        return 4L * (columns.length + 1) * filePositions.length;
+    }
+}
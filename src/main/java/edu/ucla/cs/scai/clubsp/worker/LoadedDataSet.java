@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.CoordinateDictionary;
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistributionWithSquares;
+import edu.ucla.cs.scai.clubsp.commons.Range;
+import java.util.Arrays;
+
+/**
+ * The points of a data set loaded by a worker, together with their domain. A
+ * loaded data set is never modified, so it can be shared by several
+ * executions through the DataSetCache.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class LoadedDataSet {
+
+    final PointStore store;
+    final Range localDomain;
+    //the following fields are managed by the DataSetCache
+    String key;
+    long fileLastModified;
+    long fileLength;
+    int references;
+    boolean cached;
+    //the marginals of the root built while loading, for the domain rootDomain - they are never modified,
+    //and every execution gets its own copy, since the blocks modify their marginals
+    final Range rootDomain;
+    final MarginalDistributionWithSquares[] rootMarginals;
+    CoordinateDictionary dictionary; //built the first time it is requested
+
+    public LoadedDataSet(PointStore store, Range localDomain) {
+        this(store, localDomain, null, null);
+    }
+
+    //rootMarginals are the marginals of the root with the domain rootDomain, or null if they were not built
+    public LoadedDataSet(PointStore store, Range localDomain, Range rootDomain, MarginalDistributionWithSquares[] rootMarginals) {
+        this.store = store;
+        this.localDomain = localDomain;
+        this.rootDomain = rootDomain;
+        this.rootMarginals = rootMarginals;
+    }
+
+    public PointStore getStore() {
+        return store;
+    }
+
+    //a copy is returned, since the domain is shared with other executions
+    public Range getLocalDomain() {
+        return localDomain.getCopy();
+    }
+
+    //returns a copy of the marginals of the root built while loading, if they were built for the given domain, or null
+    public MarginalDistributionWithSquares[] getRootMarginals(Range domain) {
+        if (rootMarginals == null || !Arrays.equals(rootDomain.inf, domain.inf) || !Arrays.equals(rootDomain.sup, domain.sup)) {
+            return null;
+        }
+        MarginalDistributionWithSquares[] res = new MarginalDistributionWithSquares[rootMarginals.length];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = rootMarginals[i].getCopy();
+        }
+        return res;
+    }
+
+    //the distinct values of the coordinates of the points
+    public synchronized CoordinateDictionary getDictionary() {
+        if (dictionary == null) {
+            int[][] columns = new int[store.getDimensionality()][store.size()];
+            for (int i = 0; i < columns.length; i++) {
+                for (int j = 0; j < columns[i].length; j++) {
+                    columns[i][j] = store.getCoord(j, i);
+                }
+            }
+            dictionary = CoordinateDictionary.fromColumns(columns);
+        }
+        return dictionary;
+    }
+
+    public long getMemorySize() {
+        long res = store.getMemorySize();
+        if (rootMarginals != null) {
+            for (MarginalDistributionWithSquares m : rootMarginals) {
+                res += m.getSizeInBytes();
+            }
+        }
+        return res;
+    }
+}
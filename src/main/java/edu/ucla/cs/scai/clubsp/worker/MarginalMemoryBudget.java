@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistributionWithSquares;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounds the memory used by the local marginals of the blocks of an execution.
+ * The marginals are tracked in least recently used order, and when the budget
+ * is exceeded the least recently used ones are evicted. Since the local
+ * marginals can always be rebuilt from the points of the block, an evicted
+ * marginal is simply recomputed if it is requested again.
+ * <p>
+ * The evicted marginals are dropped by a single evictor thread, since the
+ * marginals are registered by threads that can hold the locks of other blocks
+ * (e.g., the larger child holds its own lock while asking the marginals of its
+ * sibling), and dropping the marginals of a block needs its lock. An eviction
+ * drops only the marginals that were registered, so that if the block rebuilt
+ * its marginals in the meantime, the new ones are kept and remain tracked.
+ * <p>
+ * The global marginals are not tracked: they contain the contributions of the
+ * other workers, so they cannot be rebuilt and evicting them would break the
+ * evaluation of the block. They exist only from the exchange of the marginals
+ * of a block to its split or finalization, so their number is bounded by the
+ * blocks evaluated at the same time.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class MarginalMemoryBudget {
+
+    final long maxBytes;
+    long usedBytes;
+    final LinkedHashMap<Key, Entry> marginals = new LinkedHashMap<>(16, 0.75f, true);
+    final ArrayDeque<Eviction> evictions = new ArrayDeque<>(); //the evicted marginals not dropped yet
+    boolean evicting; //the evictor thread is running
+
+    //the marginals of a block on a dimension - blocks are compared by identity, since their equals compares the ranges
+    static class Key {
+
+        final WorkerClusterBlock block;
+        final int dimension;
+
+        Key(WorkerClusterBlock block, int dimension) {
+            this.block = block;
+            this.dimension = dimension;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(block) + dimension;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return block == other.block && dimension == other.dimension;
+        }
+    }
+
+    static class Entry {
+
+        final MarginalDistributionWithSquares marginals;
+        final long bytes;
+
+        Entry(MarginalDistributionWithSquares marginals, long bytes) {
+            this.marginals = marginals;
+            this.bytes = bytes;
+        }
+    }
+
+    static class Eviction {
+
+        final Key key;
+        final MarginalDistributionWithSquares marginals;
+
+        Eviction(Key key, MarginalDistributionWithSquares marginals) {
+            this.key = key;
+            this.marginals = marginals;
+        }
+    }
+
+    //maxBytes <= 0 means that there is no limit
+    public MarginalMemoryBudget(long maxBytes) {
+        this.maxBytes = maxBytes <= 0 ? Long.MAX_VALUE : maxBytes;
+    }
+
+    //registers new marginals, and evicts the least recently used ones if the budget is exceeded
+    //the caller can hold the locks of some blocks, so the evicted marginals are dropped by the evictor thread
+    public synchronized void add(WorkerClusterBlock block, int dimension, MarginalDistributionWithSquares m) {
+        Key key = new Key(block, dimension);
+        Entry old = marginals.put(key, new Entry(m, m.getSizeInBytes()));
+        if (old != null) {
+            usedBytes -= old.bytes;
+        }
+        usedBytes += m.getSizeInBytes();
+        for (Iterator<Map.Entry<Key, Entry>> it = marginals.entrySet().iterator(); usedBytes > maxBytes && it.hasNext();) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (e.getKey().equals(key)) { //the new marginals are kept
+                continue;
+            }
+            usedBytes -= e.getValue().bytes;
+            evictions.add(new Eviction(e.getKey(), e.getValue().marginals));
+            it.remove();
+        }
+        if (!evictions.isEmpty() && !evicting) {
+            evicting = true;
+            new Thread() {
+                @Override
+                public void run() {
+                    dropEvicted();
+                }
+            }.start();
+        }
+    }
+
+    //executed by the evictor thread, which holds no other lock
+    private void dropEvicted() {
+        while (true) {
+            Eviction e;
+            synchronized (this) {
+                e = evictions.poll();
+                if (e == null) {
+                    evicting = false;
+                    return;
+                }
+            }
+            e.key.block.dropEvictedLocalMarginals(e.key.dimension, e.marginals);
+        }
+    }
+
+    //the marginals were used, so they become the most recently used ones
+    public synchronized void touch(WorkerClusterBlock block, int dimension) {
+        marginals.get(new Key(block, dimension));
+    }
+
+    //the marginals were removed by the block - nothing is done if they are not the registered ones, since they were evicted
+    public synchronized void remove(WorkerClusterBlock block, int dimension, MarginalDistributionWithSquares m) {
+        Key key = new Key(block, dimension);
+        Entry e = marginals.get(key);
+        if (e != null && e.marginals == m) {
+            marginals.remove(key);
+            usedBytes -= e.bytes;
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    //the marginals registered and not evicted
+    public synchronized int size() {
+        return marginals.size();
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Columnar point store keeping the coordinates outside the Java heap, either
+ * in direct buffers or in buffers mapped from a columnar data set file. Every
+ * column is split into segments of SEGMENT_SIZE values, so that the number of
+ * points is not limited by the maximum size of a buffer.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class OffHeapPointStore implements PointStore {
+
+    public static final int SEGMENT_SHIFT = 28;
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    final int size;
+    final IntBuffer[][] columns; //columns[i][s] is the s-th segment of the i-th column
+    final IntBuffer[] filePositions; //null if the points are stored in file order
+    final boolean mapped; //true if the columns are mapped from a file
+
+    private OffHeapPointStore(int size, IntBuffer[][] columns, IntBuffer[] filePositions, boolean mapped) {
+        this.size = size;
+        this.columns = columns;
+        this.filePositions = filePositions;
+        this.mapped = mapped;
+    }
+
+    public static int getNumberOfSegments(int size) {
+        return (int) ((size + (long) SEGMENT_MASK) >>> SEGMENT_SHIFT);
+    }
+
+    public static int getSegmentLength(int size, int segment) {
+        return Math.min(SEGMENT_SIZE, size - segment * SEGMENT_SIZE);
+    }
+
+    private static IntBuffer[] allocateColumn(int size) {
+        IntBuffer[] res = new IntBuffer[getNumberOfSegments(size)];
+        for (int s = 0; s < res.length; s++) {
+            res[s] = ByteBuffer.allocateDirect(4 * getSegmentLength(size, s)).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return res;
+    }
+
+    //allocates an empty store backed by direct buffers, to be filled through setCoord
+    public static OffHeapPointStore allocate(int dimensionality, int size, boolean fileOrder) {
+        IntBuffer[][] columns = new IntBuffer[dimensionality][];
+        for (int i = 0; i < dimensionality; i++) {
+            columns[i] = allocateColumn(size);
+        }
+        return new OffHeapPointStore(size, columns, fileOrder ? null : allocateColumn(size), false);
+    }
+
+    //wraps the segments mapped from a file - the points are assumed to be in file order
+    public static OffHeapPointStore wrap(int size, IntBuffer[][] columns) {
+        return new OffHeapPointStore(size, columns, null, true);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getDimensionality() {
+        return columns.length;
+    }
+
+    @Override
+    public int getCoord(int index, int dimension) {
+        return columns[dimension][index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+    }
+
+    @Override
+    public void getPoint(int index, int[] p) {
+        int s = index >>> SEGMENT_SHIFT;
+        int j = index & SEGMENT_MASK;
+        for (int i = 0; i < columns.length; i++) {
+            p[i] = columns[i][s].get(j);
+        }
+    }
+
+    public void setCoord(int index, int dimension, int v) {
+        columns[dimension][index >>> SEGMENT_SHIFT].put(index & SEGMENT_MASK, v);
+    }
+
+    @Override
+    public int getFilePosition(int index) {
+        if (filePositions == null) {
+            return index;
+        }
+        return filePositions[index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+    }
+
+    public void setFilePosition(int index, int filePosition) {
+        filePositions[index >>> SEGMENT_SHIFT].put(index & SEGMENT_MASK, filePosition);
+    }
+
+    @Override
+    public int getWeight(int index) {
+        return 1;
+    }
+
+    @Override
+    public int getTotalWeight() {
+        return size();
+    }
+
+    @Override
+    public int getFilePosition(int index, int k) {
+        return getFilePosition(index);
+    }
+
+    //mapped columns are not counted, since their pages belong to the file system cache
+    @Override
+    public long getMemorySize() {
+        return 4L * size * ((mapped ? 0 : columns.length) + (filePositions == null ? 0 : 1));
+    }
+}
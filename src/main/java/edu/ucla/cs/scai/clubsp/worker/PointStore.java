@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+/**
+ * Read-only access to the points loaded by a worker. Points are identified by
+ * their index in [0, size), and blocks refer to their points through these
+ * indexes.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public interface PointStore {
+
+    int size();
+
+    int getDimensionality();
+
+    int getCoord(int index, int dimension);
+
+    //copies the coordinates of the point into p, which must have length equal to the dimensionality
+    void getPoint(int index, int[] p);
+
+    //the number of occurrences of the point in the data set file - it is 1 unless identical points are merged
+    int getWeight(int index);
+
+    //the number of points in the data set file, i.e., the sum of the weights
+    int getTotalWeight();
+
+    //the position of the point in the data set file, used for writing the labels
+    int getFilePosition(int index);
+
+    //the position of the k-th occurrence of the point in the data set file, with k in [0, getWeight(index))
+    int getFilePosition(int index, int k);
+
+    //the number of bytes allocated for the points, in the heap or in direct buffers
+    long getMemorySize();
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.BestSplitResult;
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistribution;
+import java.util.Arrays;
+
+/**
+ * The evaluation of a new block started by a worker right after the split that
+ * created it, without waiting for the requests of the master. On every
+ * dimension, the marginals of the workers are summed along the same binary
+ * tree planned by the master, and the worker at the root of the tree (the
+ * aggregator of the dimension) computes the best split in advance. The
+ * contributions of the other workers can arrive before the block is created on
+ * this worker, so they are kept until the worker adds its own marginals.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class SpeculativeEvaluation {
+
+    final int blockId;
+    WorkerClusterBlock block; //null until this worker adds its own marginals
+    final MarginalDistribution[] pendingMarginals; //the contributions received before the own marginals were added
+    final boolean[] ownMarginalsAdded;
+    final int[] missingContributions; //including the one of this worker
+    final boolean[] reduced; //the aggregator completed the global marginals, and the best split was computed if possible
+    final boolean[] evaluationRequested; //the master requested the evaluation before the global marginals were complete
+    final BestSplitResult[] splits; //null if the best split is approximated
+    final int[] splitGlobalN; //the global statistics used to compute the best split, derived from the global marginals
+    final double[][] splitGlobalLS;
+
+    //contributions[d] is the number of workers sending their marginals on dimension d to this worker
+    SpeculativeEvaluation(int blockId, int[] contributions) {
+        this.blockId = blockId;
+        int dimensionality = contributions.length;
+        pendingMarginals = new MarginalDistribution[dimensionality];
+        ownMarginalsAdded = new boolean[dimensionality];
+        missingContributions = new int[dimensionality];
+        for (int i = 0; i < dimensionality; i++) {
+            missingContributions[i] = contributions[i] + 1;
+        }
+        reduced = new boolean[dimensionality];
+        evaluationRequested = new boolean[dimensionality];
+        splits = new BestSplitResult[dimensionality];
+        splitGlobalN = new int[dimensionality];
+        splitGlobalLS = new double[dimensionality][];
+    }
+
+    //adds the marginals of another worker, and returns true if they were the last ones
+    public synchronized boolean addContribution(int dimension, MarginalDistribution marginals) {
+        if (ownMarginalsAdded[dimension]) {
+            block.sumToGlobalMarginals(marginals, dimension);
+        } else if (pendingMarginals[dimension] == null) {
+            pendingMarginals[dimension] = marginals;
+        } else {
+            pendingMarginals[dimension].add(marginals);
+            pendingMarginals[dimension].normalize();
+        }
+        missingContributions[dimension]--;
+        return missingContributions[dimension] == 0;
+    }
+
+    //the global marginals of the block must be already initialized with the local ones
+    //returns true if the contributions of the other workers were already received
+    public synchronized boolean addOwnContribution(WorkerClusterBlock block, int dimension) {
+        this.block = block;
+        ownMarginalsAdded[dimension] = true;
+        if (pendingMarginals[dimension] != null) {
+            block.sumToGlobalMarginals(pendingMarginals[dimension], dimension);
+            pendingMarginals[dimension] = null;
+        }
+        missingContributions[dimension]--;
+        return missingContributions[dimension] == 0;
+    }
+
+    //returns true if the master already requested the evaluation on the dimension
+    public synchronized boolean setSplit(int dimension, BestSplitResult split, int globalN, double[] globalLS) {
+        splits[dimension] = split;
+        splitGlobalN[dimension] = globalN;
+        splitGlobalLS[dimension] = globalLS;
+        reduced[dimension] = true;
+        return evaluationRequested[dimension];
+    }
+
+    //returns true if the block can be evaluated on the dimension now, otherwise it is evaluated when the global marginals are complete
+    public synchronized boolean requestEvaluation(int dimension) {
+        if (reduced[dimension]) {
+            return true;
+        }
+        evaluationRequested[dimension] = true;
+        return false;
+    }
+
+    //the best split computed in advance, or null if it was not computed or it was computed with different global statistics
+    public synchronized BestSplitResult getSplit(int dimension, int globalN, double[] globalLS) {
+        if (splits[dimension] == null || splitGlobalN[dimension] != globalN || !Arrays.equals(splitGlobalLS[dimension], globalLS)) {
+            return null;
+        }
+        return splits[dimension];
+    }
+}
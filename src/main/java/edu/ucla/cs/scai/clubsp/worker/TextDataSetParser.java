@@ -0,0 +1,316 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.Range;
+import edu.ucla.cs.scai.clubsp.commons.Utils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a text data set (one point per line, coordinates separated by commas,
+ * spaces or tabs) by splitting the file into byte ranges that are parsed
+ * concurrently. A chunk owns all the lines starting inside its byte range, so
+ * concatenating the chunks in order gives the points in file order. As with the
+ * sequential reader, the data set ends at the first blank line. With off-heap
+ * storage, the chunks are parsed into direct buffers, so that the points never
+ * occupy the Java heap.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class TextDataSetParser {
+
+    static final int MIN_CHUNK_SIZE = 1024 * 1024;
+    static final int MAX_CHUNK_SIZE = 32 * 1024 * 1024;
+
+    final String fileName;
+    final double scaleFactor;
+    int dimensionality;
+    int size;
+    Range domain;
+    int chunkSize;
+    boolean offHeap;
+    ArrayList<Chunk> chunks = new ArrayList<>();
+
+    public TextDataSetParser(String fileName, double scaleFactor) {
+        this.fileName = fileName;
+        this.scaleFactor = scaleFactor;
+    }
+
+    //if true, the points of the chunks are kept in direct buffers, outside the Java heap
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    //the points of a chunk, stored row by row, either in an array or in a direct buffer
+    public static class Chunk {
+
+        final int dimensionality;
+        int[] values;
+        IntBuffer offHeapValues;
+        int size;
+        int[] inf, sup;
+        boolean endOfDataSet; //a blank line was found in this chunk
+
+        Chunk(int dimensionality, boolean offHeap, int initialCapacity) {
+            this.dimensionality = dimensionality;
+            if (offHeap) {
+                offHeapValues = allocateDirect(initialCapacity);
+            } else {
+                values = new int[initialCapacity];
+            }
+            inf = new int[dimensionality];
+            sup = new int[dimensionality];
+            for (int i = 0; i < dimensionality; i++) {
+                inf[i] = Integer.MAX_VALUE;
+                sup[i] = Integer.MIN_VALUE;
+            }
+        }
+
+        private static IntBuffer allocateDirect(int capacity) {
+            return ByteBuffer.allocateDirect(4 * capacity).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+
+        private void add(int[] p) {
+            int offset = size * dimensionality;
+            int capacity = values != null ? values.length : offHeapValues.capacity();
+            if (offset + dimensionality > capacity) {
+                int newCapacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(2L * capacity, offset + dimensionality));
+                if (values != null) {
+                    values = Arrays.copyOf(values, newCapacity);
+                } else {
+                    IntBuffer newValues = allocateDirect(newCapacity);
+                    offHeapValues.position(0).limit(offset);
+                    newValues.put(offHeapValues);
+                    offHeapValues.clear();
+                    offHeapValues = newValues;
+                }
+            }
+            if (values != null) {
+                System.arraycopy(p, 0, values, offset, dimensionality);
+            } else {
+                for (int i = 0; i < dimensionality; i++) {
+                    offHeapValues.put(offset + i, p[i]);
+                }
+            }
+            for (int i = 0; i < dimensionality; i++) {
+                inf[i] = Math.min(p[i], inf[i]);
+                sup[i] = Math.max(p[i], sup[i]);
+            }
+            size++;
+        }
+
+        //copies the k-th point of the chunk into p
+        public void getPoint(int k, int[] p) {
+            int offset = k * dimensionality;
+            if (values != null) {
+                System.arraycopy(values, offset, p, 0, dimensionality);
+            } else {
+                for (int i = 0; i < dimensionality; i++) {
+                    p[i] = offHeapValues.get(offset + i);
+                }
+            }
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+
+    public void parse(ExecutorService pool) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            //a few chunks per core, so that the load is balanced even if the lines have different lengths
+            chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, fileSize / (4 * Runtime.getRuntime().availableProcessors())));
+            dimensionality = countFirstLineTokens(channel);
+            ArrayList<Callable<Chunk>> tasks = new ArrayList<>();
+            if (dimensionality > 0) {
+                for (long start = 0; start < fileSize; start += chunkSize) {
+                    final long chunkStart = start;
+                    tasks.add(new Callable<Chunk>() {
+                        @Override
+                        public Chunk call() throws Exception {
+                            return parseChunk(channel, fileSize, chunkStart, Math.min(fileSize, chunkStart + chunkSize));
+                        }
+                    });
+                }
+            }
+            try {
+                for (Future<Chunk> f : pool.invokeAll(tasks)) {
+                    Chunk c = f.get();
+                    chunks.add(c);
+                    if (c.endOfDataSet) {
+                        break;
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof NumberFormatException) {
+                    throw (NumberFormatException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+        int[] inf = new int[dimensionality];
+        int[] sup = new int[dimensionality];
+        for (int i = 0; i < dimensionality; i++) {
+            inf[i] = Integer.MAX_VALUE;
+            sup[i] = Integer.MIN_VALUE;
+        }
+        size = 0;
+        for (Chunk c : chunks) {
+            size += c.size;
+            for (int i = 0; i < dimensionality; i++) {
+                inf[i] = Math.min(inf[i], c.inf[i]);
+                sup[i] = Math.max(sup[i], c.sup[i]);
+            }
+        }
+        domain = new Range(inf, sup);
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ',' || b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static boolean isBlank(byte b) {
+        return b <= ' ';
+    }
+
+    private int countFirstLineTokens(FileChannel channel) throws IOException {
+        MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), MAX_CHUNK_SIZE));
+        int res = 0;
+        boolean inToken = false;
+        boolean blank = true;
+        for (int i = 0; i < b.limit() && b.get(i) != '\n'; i++) {
+            byte c = b.get(i);
+            if (!isBlank(c)) {
+                blank = false;
+            }
+            if (isSeparator(c)) {
+                inToken = false;
+            } else if (!inToken) {
+                inToken = true;
+                res++;
+            }
+        }
+        return blank ? 0 : res;
+    }
+
+    //parses the lines starting in [start, end)
+    private Chunk parseChunk(FileChannel channel, long fileSize, long start, long end) throws IOException {
+        //a value takes a few bytes of text, so the chunk rarely needs to grow
+        Chunk chunk = new Chunk(dimensionality, offHeap, (int) Math.max(1024, (end - start) / 8));
+        //one more chunk is mapped after the end, so that the last line can be completed
+        long mapStart = Math.max(0, start - 1);
+        long mapEnd = Math.min(fileSize, end + chunkSize);
+        MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int limit = b.limit();
+        int lineEnd = (int) (end - mapStart);
+        int pos = 0;
+        if (start > 0) {
+            //skip the line started in the previous chunk
+            while (pos < limit && b.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+        int[] p = new int[dimensionality];
+        while (pos < lineEnd && pos < limit) {
+            int lineStart = pos;
+            while (pos < limit && isBlank(b.get(pos)) && b.get(pos) != '\n') {
+                pos++;
+            }
+            if (pos == limit || b.get(pos) == '\n') {
+                //blank line: the data set ends here
+                chunk.endOfDataSet = true;
+                break;
+            }
+            pos = lineStart;
+            for (int i = 0; i < dimensionality; i++) {
+                while (pos < limit && isSeparator(b.get(pos))) {
+                    pos++;
+                }
+                boolean negative = false;
+                if (pos < limit && (b.get(pos) == '-' || b.get(pos) == '+')) {
+                    negative = b.get(pos) == '-';
+                    pos++;
+                }
+                int digitsStart = pos;
+                long v = 0;
+                while (pos < limit) {
+                    int digit = b.get(pos) - '0';
+                    if (digit < 0 || digit > 9) {
+                        break;
+                    }
+                    v = v * 10 + digit;
+                    if (v > 1L + Integer.MAX_VALUE) {
+                        throw new NumberFormatException("Value out of range at byte " + (mapStart + digitsStart));
+                    }
+                    pos++;
+                }
+                if (pos == digitsStart || (pos < limit && !isSeparator(b.get(pos)) && b.get(pos) != '\n')) {
+                    throw new NumberFormatException("Malformed value at byte " + (mapStart + digitsStart));
+                }
+                if (negative) {
+                    v = -v;
+                }
+                if (v > Integer.MAX_VALUE) {
+                    throw new NumberFormatException("Value out of range at byte " + (mapStart + digitsStart));
+                }
+                p[i] = Utils.scaleCoordinate((int) v, scaleFactor);
+            }
+            //additional values in the line are ignored
+            while (pos < limit && b.get(pos) != '\n') {
+                pos++;
+            }
+            if (pos == limit && mapEnd < fileSize) {
+                throw new IOException("Line too long at byte " + (mapStart + lineStart));
+            }
+            pos++;
+            chunk.add(p);
+        }
+        return chunk;
+    }
+
+    public int getDimensionality() {
+        return dimensionality;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public Range getDomain() {
+        return domain;
+    }
+
+    public ArrayList<Chunk> getChunks() {
+        return chunks;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+/**
+ * Point store where identical points are stored once, with a weight equal to
+ * the number of their occurrences. The file positions of the occurrences of
+ * the i-th point are positions[positionOffsets[i]..positionOffsets[i+1]-1], in
+ * file order. The points are kept in the heap, since after the deduplication
+ * they are usually much fewer than the points of the file.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class WeightedPointStore implements PointStore {
+
+    final int[][] columns;
+    final int[] positionOffsets;
+    final int[] positions;
+
+    private WeightedPointStore(int[][] columns, int[] positionOffsets, int[] positions) {
+        this.columns = columns;
+        this.positionOffsets = positionOffsets;
+        this.positions = positions;
+    }
+
+    //builds a store with the distinct points of the source, in order of first occurrence
+    public static WeightedPointStore deduplicate(PointStore source) {
+        int dimensionality = source.getDimensionality();
+        int n = source.size();
+        //open addressing hash table, containing the ids of the distinct points + 1
+        int capacity = Integer.highestOneBit(Math.max(2, 2 * n - 1)) << 1;
+        int[] table = new int[capacity];
+        int[] representatives = new int[Math.max(16, n / 16)]; //index in the source of the first occurrence of each distinct point
+        int[] ids = new int[n];
+        int nDistinct = 0;
+        int[] p = new int[dimensionality];
+        for (int j = 0; j < n; j++) {
+            source.getPoint(j, p);
+            int slot = hash(p) & (capacity - 1);
+            while (true) {
+                if (table[slot] == 0) {
+                    if (nDistinct == representatives.length) {
+                        int[] newRepresentatives = new int[2 * representatives.length];
+                        System.arraycopy(representatives, 0, newRepresentatives, 0, nDistinct);
+                        representatives = newRepresentatives;
+                    }
+                    representatives[nDistinct] = j;
+                    nDistinct++;
+                    table[slot] = nDistinct;
+                    ids[j] = nDistinct - 1;
+                    break;
+                }
+                if (equals(source, representatives[table[slot] - 1], p)) {
+                    ids[j] = table[slot] - 1;
+                    break;
+                }
+                slot = (slot + 1) & (capacity - 1);
+            }
+        }
+        table = null;
+        int[][] columns = new int[dimensionality][nDistinct];
+        for (int k = 0; k < nDistinct; k++) {
+            for (int i = 0; i < dimensionality; i++) {
+                columns[i][k] = source.getCoord(representatives[k], i);
+            }
+        }
+        representatives = null;
+        int[] positionOffsets = new int[nDistinct + 1];
+        for (int j = 0; j < n; j++) {
+            positionOffsets[ids[j] + 1] += source.getWeight(j);
+        }
+        for (int k = 0; k < nDistinct; k++) {
+            positionOffsets[k + 1] += positionOffsets[k];
+        }
+        int[] positions = new int[positionOffsets[nDistinct]];
+        int[] next = new int[nDistinct];
+        System.arraycopy(positionOffsets, 0, next, 0, nDistinct);
+        for (int j = 0; j < n; j++) {
+            for (int k = 0; k < source.getWeight(j); k++) {
+                positions[next[ids[j]]++] = source.getFilePosition(j, k);
+            }
+        }
+        return new WeightedPointStore(columns, positionOffsets, positions);
+    }
+
+    private static int hash(int[] p) {
+        int h = 1;
+        for (int i = 0; i < p.length; i++) {
+            h = 31 * h + p[i];
+        }
+        h ^= h >>> 16;
+        h *= 0x45d9f3b;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static boolean equals(PointStore source, int index, int[] p) {
+        for (int i = 0; i < p.length; i++) {
+            if (source.getCoord(index, i) != p[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return positionOffsets.length - 1;
+    }
+
+    @Override
+    public int getDimensionality() {
+        return columns.length;
+    }
+
+    @Override
+    public int getCoord(int index, int dimension) {
+        return columns[dimension][index];
+    }
+
+    @Override
+    public void getPoint(int index, int[] p) {
+        for (int i = 0; i < columns.length; i++) {
+            p[i] = columns[i][index];
+        }
+    }
+
+    @Override
+    public int getWeight(int index) {
+        return positionOffsets[index + 1] - positionOffsets[index];
+    }
+
+    @Override
+    public int getTotalWeight() {
+        return positions.length;
+    }
+
+    @Override
+    public int getFilePosition(int index) {
+        return positions[positionOffsets[index]];
+    }
+
+    @Override
+    public int getFilePosition(int index, int k) {
+        return positions[positionOffsets[index] + k];
+    }
+
+    @Override
+    public long getMemorySize() {
+        return 4L * (columns.length + 1) * size() + 4L * positions.length;
+    }
+}
@@ -15,8 +15,10 @@
  */
 package edu.ucla.cs.scai.clubsp.worker;
 
+import edu.ucla.cs.scai.clubsp.commons.ExecutionOptions;
 import edu.ucla.cs.scai.clubsp.commons.RegisteredWorker;
 import edu.ucla.cs.scai.clubsp.messages.ClubsPMessage;
+import edu.ucla.cs.scai.clubsp.messages.ExecutionMessage;
 import edu.ucla.cs.scai.clubsp.messages.WorkerConnectionRequest;
 import edu.ucla.cs.scai.clustering.syntheticgenerator.MultidimensionalGaussianGenerator;
 import static edu.ucla.cs.scai.clustering.syntheticgenerator.MultidimensionalGaussianGenerator.createImage;
@@ -29,7 +31,12 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
@@ -42,9 +49,19 @@ public class Worker {
     String masterIp;
     int masterPort;
     final HashMap<String, WorkerExecution> workerExecutions = new HashMap<>();
-    HashMap<String, RegisteredWorker> workers = new HashMap<>();
+    final ConcurrentHashMap<String, RegisteredWorker> workers = new ConcurrentHashMap<>();
     String ip;
     String id;
+    final ForkJoinPool computePool = new ForkJoinPool(); //used for CPU-bound tasks, such as parsing, with one thread per core
+    int messageThreads = 4 * Runtime.getRuntime().availableProcessors(); //the number of messages handled concurrently
+    ExecutorService messagePool; //handles the incoming messages, created when the worker is started
+    //reads the incoming messages from the sockets - it is not bounded, since a handler of another worker can block
+    //writing to this worker until the message is read, and it can be waiting for this worker to read a message of its own
+    final ExecutorService readerPool = Executors.newCachedThreadPool();
+    final HashMap<String, ArrayList<ExecutionMessage>> messagesWaitingForExecution = new HashMap<>(); //received before their LoadDataSetRequest
+    final HashSet<String> abortedExecutions = new HashSet<>(); //their messages still in transit are ignored
+    boolean offHeap = false; //if true, the coordinates of the points are kept outside the Java heap
+    final DataSetCache dataSetCache = new DataSetCache(this, Runtime.getRuntime().maxMemory() / 2);
 
     public Worker(int port, String datasetsPath, String masterIp, int masterPort) throws Exception {
         this.port = port;
@@ -63,6 +80,7 @@ public class Worker {
     }
 
     public void start() throws Exception {
+        messagePool = Executors.newFixedThreadPool(messageThreads);
         try (ServerSocket listener = new ServerSocket(port);) {
             System.out.println("Worker started. Waiting for an id");
             //register with the master
@@ -77,7 +95,7 @@ public class Worker {
             }
             while (true) {
                 Socket socket = listener.accept();
-                new WorkerIncomingMessageHandler(this, socket).start();
+                readerPool.execute(new WorkerIncomingMessageHandler(this, socket));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -85,6 +103,16 @@ public class Worker {
         }
     }
 
+    //handles a message that was read from a socket, or again a message that was deferred
+    public void submitMessage(ClubsPMessage message) {
+        messagePool.execute(new WorkerIncomingMessageHandler(this, message));
+    }
+
+    //runs a task of an execution with the threads handling the messages, so that the tasks started by the messages are bounded
+    public void submitTask(Runnable task) {
+        messagePool.execute(task);
+    }
+
     public void sendMessageToMaster(ClubsPMessage message) {
         try (Socket s = new Socket(masterIp, masterPort);
                 ObjectOutputStream out = new ObjectOutputStream(s.getOutputStream())) {
@@ -116,12 +144,30 @@ public class Worker {
         return id;
     }
 
+    //sets an optional parameter of the worker, specified as name=value on the command line
+    public void setOption(String name, String value) throws Exception {
+        switch (name) {
+            case "offHeap":
+                offHeap = Boolean.parseBoolean(value);
+                break;
+            case "messageThreads":
+                messageThreads = Integer.parseInt(value);
+                break;
+            case "cacheMB": //memory budget for the data sets kept after their executions finish
+                dataSetCache.setBudget(Long.parseLong(value) * 1024 * 1024);
+                break;
+            default:
+                throw new Exception("Unknown option " + name);
+        }
+    }
+
     //args[0] is the port used by this Worker
     //args[1] is the local path with the datasets
     //args[2] is the ip of the master
     //args[3] is the port of the master
+    //the following args are optional, in the form name=value (e.g., offHeap=true)
     public static void main(String[] args) {
-        if (args == null || args.length != 4) {
+        if (args == null || args.length < 4) {
             args = new String[]{"" + (10000 + (int) (Math.random() * 10000)), "/home/massimo/", "localhost"/*"131.179.64.170"*/, "9090"};
             //args = new String[]{"" + (10000 + (int) (Math.random() * 10000)), "/home/massimo/", "131.179.64.145"/*"131.179.64.170"*/, "9090"};
             //System.out.println("Parameters needed: port dataSetsPath masterIp masterPort");
@@ -144,8 +190,25 @@ public class Worker {
             System.out.println("Worker terminated");
             return;
         }
+        Worker worker;
         try {
-            new Worker(port, args[1], args[2], masterPort).start();
+            worker = new Worker(port, args[1], args[2], masterPort);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+        for (int i = 4; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            try {
+                worker.setOption(option[0], option.length > 1 ? option[1] : "true");
+            } catch (Exception e) {
+                System.out.println("Option " + args[i] + " not valid");
+                System.out.println("Worker terminated");
+                return;
+            }
+        }
+        try {
+            worker.start();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -161,10 +224,53 @@ public class Worker {
     }
 
     //start a new clustering execution
-    public synchronized void initExecution(String executionId, String dataSetId, HashMap<String, RegisteredWorker> workers, double scaleFactor) {
+    //if globalDomain is not null, the root is built as soon as the data set is loaded
+    public synchronized void initExecution(String executionId, String dataSetId, HashMap<String, RegisteredWorker> workers, ArrayList<String> workerIds, double scaleFactor, ExecutionOptions options, edu.ucla.cs.scai.clubsp.commons.Range globalDomain) {
+        if (abortedExecutions.contains(executionId)) {
+            //the abort request was received first
+            return;
+        }
         this.workers.putAll(workers);
-        WorkerExecution newExec = new WorkerExecution(this, executionId, dataSetId, scaleFactor);
+        WorkerExecution newExec = new WorkerExecution(this, executionId, dataSetId, workerIds, scaleFactor, options, globalDomain);
         workerExecutions.put(executionId, newExec);
+        ArrayList<ExecutionMessage> waiting = messagesWaitingForExecution.remove(executionId);
+        if (waiting != null) {
+            for (ExecutionMessage msg : waiting) {
+                submitMessage(msg);
+            }
+        }
+    }
+
+    //returns the execution of the message, or null if its LoadDataSetRequest was not received yet
+    //(the master does not wait for the data set to be loaded when the global domain is known in advance)
+    //in this case, the message is handled again when the execution is started
+    public synchronized WorkerExecution getExecutionOrDefer(ExecutionMessage msg) {
+        WorkerExecution res = workerExecutions.get(msg.executionId);
+        if (res == null && !abortedExecutions.contains(msg.executionId)) {
+            ArrayList<ExecutionMessage> waiting = messagesWaitingForExecution.get(msg.executionId);
+            if (waiting == null) {
+                waiting = new ArrayList<>();
+                messagesWaitingForExecution.put(msg.executionId, waiting);
+            }
+            waiting.add(msg);
+        }
+        return res;
+    }
+
+    //called when the last step of an execution is completed - the data set is released to the cache
+    public synchronized void finishExecution(WorkerExecution execution) {
+        workerExecutions.remove(execution.executionId);
+        execution.releaseDataSet();
+    }
+
+    //the execution was abandoned by the master - the messages received for it are discarded
+    public synchronized void abortExecution(String executionId) {
+        abortedExecutions.add(executionId);
+        messagesWaitingForExecution.remove(executionId);
+        WorkerExecution execution = workerExecutions.get(executionId);
+        if (execution != null) {
+            finishExecution(execution);
+        }
     }
 
     public void doGeneration(int nOfTuples, int domainWidth, double noiseRatio, int[][] centers, int[][] radii) {
@@ -16,14 +16,18 @@
 package edu.ucla.cs.scai.clubsp.worker;
 
 import edu.ucla.cs.scai.clubsp.commons.BestSplitResult;
-import edu.ucla.cs.scai.clubsp.commons.DataSetPoint;
+import edu.ucla.cs.scai.clubsp.commons.CoordinateDictionary;
+import edu.ucla.cs.scai.clubsp.commons.Int128Array;
 import edu.ucla.cs.scai.clubsp.commons.MarginalDistribution;
 import edu.ucla.cs.scai.clubsp.commons.MarginalDistributionWithSquares;
 import edu.ucla.cs.scai.clubsp.commons.Range;
 import edu.ucla.cs.scai.clubsp.commons.SplitResult;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  *
@@ -31,10 +35,14 @@ import java.util.Collection;
  */
 public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
 
+    static final int MIN_PARALLEL_SCAN_SIZE = 1 << 15; //minimum number of points scanned by a task when the marginals are built in parallel
+    static final int APPROXIMATE_SPLIT_CANDIDATES = 2; //the number of bucket boundaries refined by the approximate best split
+    static final int MIN_APPROXIMATE_WIDTH = 64; //the valley criterion needs at least 40 bins, and it is evaluated on the buckets
+
     int id;
-    double[] localLS; //linear sum of the coordinates of the local points in the block
-    double[] localSS; //squared sum of the coordinates of the local points in the block
-    int localN; //the number of local points inside the block
+    long[] localLS; //linear sum of the coordinates of the local points in the block
+    Int128Array localSS; //squared sum of the coordinates of the local points in the block
+    int localN; //the number of local points inside the block, i.e., the sum of their weights
     double[] globalLS; //linear sum of the coordinates of the global points in the block
     double[] globalSS;//squared sum of the coordinates of the global points in the block
     int globalN; //the number of global points inside the block
@@ -45,7 +53,12 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
     WorkerClusterBlock sibling; //sibling node    
     int sd = -1; //the splitting dimension, when node is split sd is in [0..d-1];
     int sp; //the splitting position    
-    ArrayList<DataSetPoint> data;
+    PointStore store; //the points loaded by the worker
+    int[] points; //the indexes in the store of the local points, shared by all the blocks of the execution
+    int from, to; //the local points inside the block are points[from..to-1]
+    //shared by all the blocks of the execution, since a split partitions a range of points that is also scanned by
+    //its ancestors (e.g., when the sibling of a larger child rebuilds its marginals): the scans exclude every partitioning
+    ReentrantReadWriteLock pointsLock;
     double localSSQ;
     double globalSSQ;
     double localSSQd[];
@@ -55,9 +68,19 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
     double globalAvgMarg[];
     double actualDeltaSSQ = 0;
     boolean isOutlierNode = false;
-    MarginalDistributionWithSquares[] localMarginals;
+    MarginalDistributionWithSquares[] localMarginals; //built on demand, one dimension at a time
     MarginalDistribution[] globalMarginals;
+    Object[] marginalLocks; //one lock for every dimension, guarding localMarginals and globalMarginals
+    volatile boolean finalized; //the block is a cluster, so its marginals are not kept
+    MarginalMemoryBudget budget; //shared by all the blocks of the execution
+    ForkJoinPool pool; //used to build the marginals in parallel, shared by all the blocks of the execution
+    boolean[] marginalsReported; //the parent was notified that the marginals on the dimension were stored
+    int[] storedChildMarginals; //the number of children that stored their marginals on the dimension
+    int approximateWidth; //if positive, the global marginals with more bins are coarsened, and the best split is approximated
+    ApproximateSplit[] approximateSplits; //the approximate best splits waiting for the windows of the other workers
     int dimensionality;
+    CoordinateDictionary dictionary; //if not null, the bins of the marginals correspond to the codes of the values
+    int[] marginalOffset; //the coordinate (or the code) corresponding to the first bin of the marginals
 
     public int getId() {
         return id;
@@ -67,22 +90,62 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
         this.id = id;
     }
 
-    public static WorkerClusterBlock initRoot(Collection<DataSetPoint> data, Range globalDomain, int id) {
-        return new WorkerClusterBlock(data, globalDomain, id, true);
+    public static WorkerClusterBlock initRoot(PointStore store, Range globalDomain, int id) {
+        return initRoot(store, globalDomain, null, id);
+    }
+
+    //if dictionary is not null, the marginals are indexed by the codes of the values
+    public static WorkerClusterBlock initRoot(PointStore store, Range globalDomain, CoordinateDictionary dictionary, int id) {
+        int[] points = new int[store.size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = i;
+        }
+        WorkerClusterBlock root = new WorkerClusterBlock(store, points, 0, points.length, globalDomain, dictionary, id);
+        root.pointsLock = new ReentrantReadWriteLock();
+        root.computeLocalLSSSfromData();
+        return root;
+    }
+
+    //the marginals of the root were already built while loading the data set
+    public static WorkerClusterBlock initRoot(PointStore store, Range globalDomain, int id, MarginalDistributionWithSquares[] localMarginals) {
+        int[] points = new int[store.size()];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = i;
+        }
+        WorkerClusterBlock root = new WorkerClusterBlock(store, points, 0, points.length, globalDomain, null, id);
+        root.pointsLock = new ReentrantReadWriteLock();
+        root.localMarginals = localMarginals;
+        for (MarginalDistributionWithSquares m : localMarginals) {
+            m.normalize();
+        }
+        root.computeLocalLSSSfromMarginals();
+        return root;
     }
 
     //this constructor must be called only by a worker
-    //data are scanned, marginals, LS, SS and SSQ are computed
-    private WorkerClusterBlock(Collection<DataSetPoint> data, Range globalDomain, int id, boolean computeMarginals) {
-        this.data = new ArrayList(data);
+    //LS and SS must be computed by the caller, while the marginals are computed when they are needed
+    private WorkerClusterBlock(PointStore store, int[] points, int from, int to, Range globalDomain, CoordinateDictionary dictionary, int id) {
+        this.store = store;
+        this.points = points;
+        this.from = from;
+        this.to = to;
         this.id = id;
         this.r = globalDomain;
         dimensionality = globalDomain.inf.length;
-        localN = data.size();
+        this.dictionary = dictionary;
+        marginalOffset = new int[dimensionality];
+        for (int i = 0; i < dimensionality; i++) {
+            marginalOffset[i] = dictionary == null ? r.inf[i] : dictionary.getFirstCode(i, r.inf[i]);
+        }
+        localN = to - from;
         localMarginals = new MarginalDistributionWithSquares[dimensionality];
         globalMarginals = new MarginalDistribution[dimensionality];
-        if (computeMarginals) {
-            computeMarginalsFromData();
+        marginalsReported = new boolean[dimensionality];
+        storedChildMarginals = new int[dimensionality];
+        approximateSplits = new ApproximateSplit[dimensionality];
+        marginalLocks = new Object[dimensionality];
+        for (int i = 0; i < dimensionality; i++) {
+            marginalLocks[i] = new Object();
         }
     }
 
@@ -96,42 +159,331 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
         this.r = globalDomain;
         this.id = 0;
         dimensionality = globalDomain.inf.length;
-        localLS = new double[globalDomain.getDimensionality()];
-        localSS = new double[globalDomain.getDimensionality()];
+        localLS = new long[globalDomain.getDimensionality()];
+        localSS = new Int128Array(globalDomain.getDimensionality());
         globalLS = new double[dimensionality];
         globalSS = new double[dimensionality];
         this.globalN = globalCount;
     }
 
-    private void computeMarginalsFromData() {
+    //if the pool is not null, the marginals are built in parallel by its threads
+    public void setComputePool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    //the global marginals with more than approximateWidth bins are built with merged bins (0 means never)
+    public void setApproximateWidth(int approximateWidth) {
+        this.approximateWidth = approximateWidth;
+    }
+
+    //the marginals stored by the blocks are accounted to the budget, which can evict them
+    //the marginals already computed (e.g., those of the root built while loading) are registered
+    public void setMarginalMemoryBudget(MarginalMemoryBudget budget) {
+        this.budget = budget;
+        for (int i = 0; i < dimensionality; i++) {
+            MarginalDistributionWithSquares m = getComputedLocalMarginals(i);
+            if (m != null) {
+                budget.add(this, i, m);
+            }
+        }
+    }
+
+    //returns the local marginals on the dimension, computing them if this is the first request
+    //or if they were evicted
+    public MarginalDistributionWithSquares getLocalMarginals(int dimension) {
+        MarginalDistributionWithSquares res;
+        boolean stored = false;
+        boolean report = false;
+        synchronized (marginalLocks[dimension]) {
+            res = localMarginals[dimension];
+            if (res == null) {
+                res = computeLocalMarginals(dimension);
+                //the sibling of a finalized block can still need its marginals, but they are not kept
+                if (!finalized) {
+                    localMarginals[dimension] = res;
+                    stored = true;
+                    report = parent != null && !marginalsReported[dimension];
+                    marginalsReported[dimension] = true;
+                }
+            }
+        }
+        //the budget is updated without holding the lock of the dimension, but the caller can hold the locks of other blocks
+        //(e.g., in getGlobalMarginals, or when the larger child gets the marginals of its sibling), so the budget
+        //never drops marginals in this thread
+        if (budget != null) {
+            if (stored) {
+                budget.add(this, dimension, res);
+            } else {
+                budget.touch(this, dimension);
+            }
+        }
+        if (report) {
+            parent.childMarginalsStored(dimension);
+        }
+        return res;
+    }
+
+    //when both the children have their own marginals on the dimension, those of the parent are not needed anymore
+    private void childMarginalsStored(int dimension) {
+        synchronized (marginalLocks[dimension]) {
+            storedChildMarginals[dimension]++;
+            if (storedChildMarginals[dimension] == 2) {
+                dropLocalMarginals(dimension);
+            }
+        }
+    }
+
+    //the local marginals can be dropped at any time, since they are recomputed when needed
+    private void dropLocalMarginals(int dimension) {
+        takeLocalMarginals(dimension);
+    }
+
+    //invoked by the budget: the marginals are dropped only if they are still the evicted ones
+    void dropEvictedLocalMarginals(int dimension, MarginalDistributionWithSquares evicted) {
+        synchronized (marginalLocks[dimension]) {
+            if (localMarginals[dimension] == evicted) {
+                localMarginals[dimension] = null;
+            }
+        }
+    }
+
+    //removes the local marginals from the block and returns them, so that the caller can modify them
+    private MarginalDistributionWithSquares takeLocalMarginals(int dimension) {
+        synchronized (marginalLocks[dimension]) {
+            MarginalDistributionWithSquares res = localMarginals[dimension];
+            if (res != null) {
+                localMarginals[dimension] = null;
+                if (budget != null) {
+                    budget.remove(this, dimension, res);
+                }
+            }
+            return res;
+        }
+    }
+
+    //returns the local marginals on the dimension if they were already computed, null otherwise
+    private MarginalDistributionWithSquares getComputedLocalMarginals(int dimension) {
+        synchronized (marginalLocks[dimension]) {
+            return localMarginals[dimension];
+        }
+    }
+
+    //the marginals are derived from those of the parent, if they are still available
+    //on the splitting dimension, each child gets a range of the bins of the parent
+    //on the other dimensions, the larger child takes the marginals of the parent, which are not used by the sibling,
+    //and subtracts the marginals of its sibling in place
+    //only the larger child locks its sibling, so that the locks cannot be acquired in a circular order
+    private MarginalDistributionWithSquares computeLocalMarginals(int dimension) {
+        if (parent != null) {
+            if (dimension == parent.sd) {
+                MarginalDistributionWithSquares parentMarginals = parent.getComputedLocalMarginals(dimension);
+                if (parentMarginals != null) {
+                    MarginalDistributionWithSquares res;
+                    int parentWidth = parentMarginals.getWidth();
+                    if (this == parent.lc) {
+                        res = parentMarginals.getCopy(0, getMarginalWidth(dimension) - 1);
+                    } else {
+                        res = parentMarginals.getCopy(parentWidth - getMarginalWidth(dimension), parentWidth - 1);
+                    }
+                    res.normalize();
+                    return res;
+                }
+            } else if (isLargerChild()) {
+                MarginalDistributionWithSquares res = parent.takeLocalMarginals(dimension);
+                if (res != null) {
+                    res.sub(sibling.getLocalMarginals(dimension));
+                    res.normalize();
+                    return res;
+                }
+            }
+        }
+        return computeMarginalsFromData(dimension);
+    }
+
+    //the left child is the smaller one if the children have the same number of local points
+    private boolean isLargerChild() {
+        int n = to - from;
+        int siblingN = sibling.to - sibling.from;
+        return this == parent.lc ? n > siblingN : n >= siblingN;
+    }
+
+    private MarginalDistributionWithSquares computeMarginalsFromData(int dimension) {
+        pointsLock.readLock().lock();
+        try {
+            return computeMarginalsFromDataLocked(dimension);
+        } finally {
+            pointsLock.readLock().unlock();
+        }
+    }
+
+    private MarginalDistributionWithSquares computeMarginalsFromDataLocked(int dimension) {
+        int width = getMarginalWidth(dimension);
+        //a block with few points cannot occupy many bins, so the sparse marginals are built directly
+        int[] bins = to - from < MarginalDistribution.SPARSE_OCCUPANCY * width ? getOccupiedPositions(dimension) : null;
+        MarginalDistributionWithSquares res;
+        if (pool == null || to - from < 2 * MIN_PARALLEL_SCAN_SIZE) {
+            res = computeMarginalsFromData(dimension, bins, from, to);
+        } else {
+            //one chunk per thread at most, since every chunk has its own partial marginals
+            int chunkSize = Math.max(MIN_PARALLEL_SCAN_SIZE, (to - from + pool.getParallelism() - 1) / pool.getParallelism());
+            res = pool.invoke(new MarginalsTask(dimension, bins, from, to, chunkSize));
+        }
+        res.normalize();
+        return res;
+    }
+
+    //scans points[begin..end-1] - if bins is not null, the result is sparse with the given bins
+    private MarginalDistributionWithSquares computeMarginalsFromData(int dimension, int[] bins, int begin, int end) {
+        int width = getMarginalWidth(dimension);
+        MarginalDistributionWithSquares res = bins != null
+                ? new MarginalDistributionWithSquares(width, dimensionality, bins)
+                : new MarginalDistributionWithSquares(width, dimensionality);
+        int[] p = new int[dimensionality];
+        for (int j = begin; j < end; j++) {
+            store.getPoint(points[j], p);
+            int weight = store.getWeight(points[j]);
+            int position = getMarginalPosition(dimension, p[dimension]);
+            if (bins != null) {
+                position = res.getEntry(position);
+            }
+            if (weight == 1) {
+                res.add(p, position);
+            } else {
+                res.add(p, position, weight);
+            }
+        }
+        return res;
+    }
+
+    //builds the marginals of a range of points, by splitting it into chunks whose partial marginals are summed
+    private class MarginalsTask extends RecursiveTask<MarginalDistributionWithSquares> {
+
+        final int dimension;
+        final int[] bins;
+        final int begin, end;
+        final int chunkSize;
+
+        MarginalsTask(int dimension, int[] bins, int begin, int end, int chunkSize) {
+            this.dimension = dimension;
+            this.bins = bins;
+            this.begin = begin;
+            this.end = end;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected MarginalDistributionWithSquares compute() {
+            if (end - begin <= chunkSize) {
+                return computeMarginalsFromData(dimension, bins, begin, end);
+            }
+            int mid = begin + (end - begin) / 2;
+            MarginalsTask left = new MarginalsTask(dimension, bins, begin, mid, chunkSize);
+            left.fork();
+            MarginalDistributionWithSquares res = new MarginalsTask(dimension, bins, mid, end, chunkSize).compute();
+            //the partial marginals have the same bins, so they are summed entry by entry
+            res.add(left.join());
+            return res;
+        }
+    }
+
+    private void computeLocalLSSSfromData() {
+        localN = 0;
+        localLS = new long[dimensionality];
+        localSS = new Int128Array(dimensionality);
+        int[] p = new int[dimensionality];
+        for (int j = from; j < to; j++) {
+            store.getPoint(points[j], p);
+            int weight = store.getWeight(points[j]);
+            localN += weight;
+            for (int i = 0; i < dimensionality; i++) {
+                localLS[i] += (long) weight * p[i];
+                localSS.addProduct(i, (long) p[i] * p[i], weight);
+            }
+        }
+    }
+
+    //the sums are exact, so they can be obtained by subtraction
+    private void computeLocalLSSSfromSibling() {
+        localN = parent.localN - sibling.localN;
+        localLS = new long[dimensionality];
+        for (int i = 0; i < dimensionality; i++) {
+            localLS[i] = parent.localLS[i] - sibling.localLS[i];
+        }
+        localSS = parent.localSS.getCopy();
+        localSS.sub(sibling.localSS);
+    }
+
+    //releases the marginals of a block that will not be split anymore
+    public void releaseMarginals() {
+        finalized = true;
         for (int i = 0; i < dimensionality; i++) {
-            localMarginals[i] = new MarginalDistributionWithSquares(r.getWidth(i));
+            synchronized (marginalLocks[i]) {
+                dropLocalMarginals(i);
+                globalMarginals[i] = null;
+            }
+        }
+    }
+
+    //the sorted distinct bins of the marginals on the dimension occupied by the points of the block
+    private int[] getOccupiedPositions(int dimension) {
+        int[] res = new int[to - from];
+        for (int j = from; j < to; j++) {
+            res[j - from] = getMarginalPosition(dimension, store.getCoord(points[j], dimension));
         }
-        for (DataSetPoint point : data) {
-            int[] p = point.p;
-            for (int d = 0; d < dimensionality; d++) {
-                int coord = p[d];
-                localMarginals[d].add(p, coord - r.inf[d]);
+        Arrays.sort(res);
+        int n = 0;
+        for (int j = 0; j < res.length; j++) {
+            if (n == 0 || res[j] != res[n - 1]) {
+                res[n++] = res[j];
             }
         }
-        computeLocalLSSSfromMarginals();
+        return Arrays.copyOf(res, n);
+    }
+
+    //the number of bins of the marginals on the dimension
+    private int getMarginalWidth(int dimension) {
+        if (dictionary == null) {
+            return r.getWidth(dimension);
+        }
+        return dictionary.getLastCode(dimension, r.sup[dimension]) - marginalOffset[dimension] + 1;
+    }
+
+    //the bin of the marginals containing the coordinate
+    private int getMarginalPosition(int dimension, int coord) {
+        if (dictionary == null) {
+            return coord - marginalOffset[dimension];
+        }
+        return dictionary.getCode(dimension, coord) - marginalOffset[dimension];
+    }
+
+    //the coordinate corresponding to a bin of the marginals
+    private int getCoordinate(int dimension, int position) {
+        if (dictionary == null) {
+            return marginalOffset[dimension] + position;
+        }
+        return dictionary.getValue(dimension, marginalOffset[dimension] + position);
     }
 
+    //the number of points is computed from the marginals, since the points can have a weight
     private void computeLocalLSSSfromMarginals() {
-        localN = data.size();
-        localLS = new double[dimensionality];
-        localSS = new double[dimensionality];
+        localN = 0;
+        localLS = new long[dimensionality];
+        localSS = new Int128Array(dimensionality);
         int shortestMarginal=0;
         for (int i=1; i<dimensionality; i++) {
-            if (localMarginals[i].count.length<localMarginals[shortestMarginal].count.length) {
+            if (localMarginals[i].getNumberOfEntries()<localMarginals[shortestMarginal].getNumberOfEntries()) {
                 shortestMarginal=i;
             }
         }
-        for (int j = 0; j < localMarginals[shortestMarginal].count.length; j++) {
-            for (int i = 0; i < dimensionality; i++) {            
-                if (localMarginals[shortestMarginal].count[j] > 0) {
-                    localLS[i] += localMarginals[shortestMarginal].sum[j][i];
-                    localSS[i] += localMarginals[shortestMarginal].sumSqr[j][i];
+        MarginalDistributionWithSquares m = localMarginals[shortestMarginal];
+        for (int j = 0; j < m.count.length; j++) {
+            localN += m.count[j];
+        }
+        for (int j = 0, offset = 0; j < m.count.length; j++, offset += dimensionality) {
+            if (m.count[j] > 0) {
+                for (int i = 0; i < dimensionality; i++) {
+                    localLS[i] += m.sum[offset + i];
+                    localSS.add(i, m.sumSqr, offset + i);
                 }
             }
         }
@@ -165,91 +517,326 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
     //if the global marginal is not initialized, it means that there is one only worker
     //and there was no previous computation of the global marginals
     public BestSplitResult computeBestSplit(int dimension) {
+        //the global values are read together, since they can be assigned concurrently by the requests on the other dimensions
+        int globalN;
+        double[] globalLS;
+        synchronized (this) {
+            globalN = this.globalN;
+            globalLS = this.globalLS;
+        }
+        return computeBestSplit(dimension, globalN, globalLS);
+    }
+
+    //the global statistics are provided by the caller, e.g., when they are derived from the global marginals
+    //before the master sends them
+    public BestSplitResult computeBestSplit(int dimension, int globalN, double[] globalLS) {
         double maxDeltaSSQ = 0; //the maximum SSQ reduction found on the dimension
         int bestPosition = -1; //the best position found on the dimension
-        double[] leftLS = new double[dimensionality];
-        double[] rightLS = new double[dimensionality];
-        if (globalMarginals[dimension] == null) {
-            globalMarginals[dimension] = localMarginals[dimension].getSimpleCopy();
-        }
-        int nLeft = 0;
-        int nRight = globalN;
-        System.arraycopy(globalLS, 0, rightLS, 0, dimensionality);
+        SplitScan scan = new SplitScan(globalN, globalLS);
+        MarginalDistribution marginals = getGlobalMarginals(dimension);
+        int[] count = marginals.count;
+        long[] sum = marginals.sum;
         //compute the splitting position set
-        MarginalDistribution marginals = globalMarginals[dimension];
-        int width = r.getWidth(dimension);
-        for (int pos = 0; pos < width - 1; pos++) {
-            if (marginals.count[pos] == 0) {
+        int width = getMarginalWidth(dimension);
+        //the entries are scanned, so that the empty bins of sparse marginals are skipped
+        for (int e = 0; e < count.length; e++) {
+            int pos = marginals.getBin(e);
+            if (pos >= width - 1) {
+                break;
+            }
+            if (count[e] == 0) {
                 continue;
             }
-            nLeft += marginals.count[pos];
-            nRight -= marginals.count[pos];
-            if (nRight == 0) {
+            double deltaSSQ = scan.moveToLeft(count[e], sum, e * dimensionality);
+            if (scan.nRight == 0) {
                 break;
             }
-            for (int k = 0; k < dimensionality; k++) {
-                leftLS[k] += marginals.sum[pos][k];
-                rightLS[k] -= marginals.sum[pos][k];
+            if (deltaSSQ > maxDeltaSSQ) {
+                maxDeltaSSQ = deltaSSQ;
+                bestPosition = getCoordinate(dimension, pos);
             }
+        }
+        return new BestSplitResult(bestPosition, maxDeltaSSQ);
+    }
+
+    //the state of a scan of the candidate splits of a dimension, in increasing order of position
+    private class SplitScan {
+
+        final int globalN;
+        int nLeft;
+        int nRight;
+        final double[] leftLS = new double[dimensionality];
+        final double[] rightLS = new double[dimensionality];
+
+        SplitScan(int globalN, double[] globalLS) {
+            this.globalN = globalN;
+            nRight = globalN;
+            System.arraycopy(globalLS, 0, rightLS, 0, dimensionality);
+        }
+
+        //moves the points of an entry of the marginals to the left side, and returns the SSQ reduction of the split after them
+        double moveToLeft(int count, long[] sum, int offset) {
+            nLeft += count;
+            nRight -= count;
+            if (nRight == 0) {
+                return 0;
+            }
+            //the state is read into local variables, and the dimensions are scanned in a single pass
+            //with a multiplication instead of Math.pow; the sum is sequential, so that the result is
+            //identical to the one of the original scan
+            double[] left = leftLS;
+            double[] right = rightLS;
+            double n1 = nLeft;
+            double n2 = nRight;
             double deltaSSQ = 0;
-            for (int k = 0; k < dimensionality; k++) {
-                deltaSSQ += Math.pow(leftLS[k] / nLeft - rightLS[k] / nRight, 2);
+            for (int k = 0; k < left.length; k++) {
+                double l = left[k] + sum[offset + k];
+                double r = right[k] - sum[offset + k];
+                left[k] = l;
+                right[k] = r;
+                double diff = l / n1 - r / n2;
+                deltaSSQ += diff * diff;
             }
-            deltaSSQ *= (1.0 * Math.max(nLeft, nRight) / globalN) * Math.min(nLeft, nRight);
-            if (deltaSSQ > maxDeltaSSQ) {
-                maxDeltaSSQ = deltaSSQ;
-                bestPosition = r.getInfCoord(dimension) + pos;
+            //the weight is computed before the product, as in the original scan, so that the result is bitwise identical
+            return deltaSSQ * ((1.0 * Math.max(nLeft, nRight) / globalN) * Math.min(nLeft, nRight));
+        }
+    }
+
+    //the number of bins merged in the global marginals on the dimension is 2^shift
+    //the shift is the smallest one leaving at most approximateWidth buckets, and it is 0 if the best split is exact
+    private int getCoarseningShift(int dimension) {
+        int width = getMarginalWidth(dimension);
+        int shift = 0;
+        if (approximateWidth > 0) {
+            int maxBuckets = Math.max(approximateWidth, MIN_APPROXIMATE_WIDTH);
+            while (((width - 1) >> shift) + 1 > maxBuckets) {
+                shift++;
+            }
+        }
+        return shift;
+    }
+
+    public boolean isBestSplitApproximated(int dimension) {
+        return getCoarseningShift(dimension) > 0;
+    }
+
+    //first step of the approximate best split: the boundaries of the buckets of the global marginals are evaluated,
+    //and the buckets around the best APPROXIMATE_SPLIT_CANDIDATES boundaries are chosen as windows to be refined
+    //the returned state collects the exact marginals of the windows from the workers
+    public ApproximateSplit startApproximateBestSplit(int dimension, int nWorkers) {
+        int globalN;
+        double[] globalLS;
+        synchronized (this) {
+            globalN = this.globalN;
+            globalLS = this.globalLS;
+        }
+        int shift = getCoarseningShift(dimension);
+        int width = getMarginalWidth(dimension);
+        MarginalDistribution marginals = getGlobalMarginals(dimension);
+        int[] count = marginals.count;
+        long[] sum = marginals.sum;
+        int[] bestBuckets = new int[APPROXIMATE_SPLIT_CANDIDATES]; //sorted by decreasing SSQ reduction
+        double[] bestDeltaSSQ = new double[APPROXIMATE_SPLIT_CANDIDATES];
+        int nCandidates = 0;
+        SplitScan scan = new SplitScan(globalN, globalLS);
+        for (int e = 0; e < count.length; e++) {
+            int bucket = marginals.getBin(e);
+            //the candidate split is after the last bin of the bucket
+            if (((bucket + 1) << shift) - 1 >= width - 1) {
+                break;
+            }
+            if (count[e] == 0) {
+                continue;
+            }
+            double deltaSSQ = scan.moveToLeft(count[e], sum, e * dimensionality);
+            if (scan.nRight == 0) {
+                break;
+            }
+            if (deltaSSQ > 0 && (nCandidates < APPROXIMATE_SPLIT_CANDIDATES || deltaSSQ > bestDeltaSSQ[nCandidates - 1])) {
+                int k = nCandidates < APPROXIMATE_SPLIT_CANDIDATES ? nCandidates++ : nCandidates - 1;
+                for (; k > 0 && bestDeltaSSQ[k - 1] < deltaSSQ; k--) {
+                    bestBuckets[k] = bestBuckets[k - 1];
+                    bestDeltaSSQ[k] = bestDeltaSSQ[k - 1];
+                }
+                bestBuckets[k] = bucket;
+                bestDeltaSSQ[k] = deltaSSQ;
+            }
+        }
+        //the best split after a bucket boundary can be anywhere in the two buckets around the boundary
+        boolean[] refined = new boolean[marginals.getWidth()];
+        for (int c = 0; c < nCandidates; c++) {
+            refined[bestBuckets[c]] = true;
+            refined[bestBuckets[c] + 1] = true;
+        }
+        //consecutive buckets are merged into a single window
+        ArrayList<Integer> begin = new ArrayList<>();
+        ArrayList<Integer> end = new ArrayList<>();
+        for (int b = 0; b < refined.length; b++) {
+            if (refined[b] && (b == 0 || !refined[b - 1])) {
+                begin.add(b << shift);
+            }
+            if (refined[b] && (b == refined.length - 1 || !refined[b + 1])) {
+                end.add(Math.min(((b + 1) << shift) - 1, width - 1));
+            }
+        }
+        int[] beginArray = new int[begin.size()];
+        int[] endArray = new int[end.size()];
+        for (int w = 0; w < beginArray.length; w++) {
+            beginArray[w] = begin.get(w);
+            endArray[w] = end.get(w);
+        }
+        ApproximateSplit res = new ApproximateSplit(globalN, globalLS, marginals, shift, beginArray, endArray, nWorkers);
+        synchronized (marginalLocks[dimension]) {
+            approximateSplits[dimension] = res;
+        }
+        return res;
+    }
+
+    //the exact local marginals of the bins [begin[w], end[w]], for every window w
+    public MarginalDistribution[] getLocalMarginalWindows(int dimension, int[] begin, int[] end) {
+        MarginalDistributionWithSquares marginals = getLocalMarginals(dimension);
+        MarginalDistribution[] res = new MarginalDistribution[begin.length];
+        for (int w = 0; w < begin.length; w++) {
+            res[w] = marginals.getSimpleCopy(begin[w], end[w]);
+        }
+        return res;
+    }
+
+    //adds the windows of a worker to the approximate best split in progress, and returns true if they were the last ones
+    public boolean addApproximateSplitWindows(int dimension, MarginalDistribution[] windows) {
+        ApproximateSplit split;
+        synchronized (marginalLocks[dimension]) {
+            split = approximateSplits[dimension];
+        }
+        return split.addWindows(windows);
+    }
+
+    //second step of the approximate best split: the candidate splits inside the windows are evaluated on the exact marginals
+    //the points before a window are taken from the buckets of the global marginals, whose sums are exact
+    public BestSplitResult completeApproximateBestSplit(int dimension) {
+        ApproximateSplit split;
+        synchronized (marginalLocks[dimension]) {
+            split = approximateSplits[dimension];
+            approximateSplits[dimension] = null;
+        }
+        double maxDeltaSSQ = 0;
+        int bestPosition = -1;
+        int width = getMarginalWidth(dimension);
+        SplitScan scan = new SplitScan(split.globalN, split.globalLS);
+        MarginalDistribution coarse = split.coarseMarginals;
+        int ce = 0; //the next entry of the coarse marginals
+        for (int w = 0; w < split.begin.length; w++) {
+            for (; ce < coarse.count.length && coarse.getBin(ce) < split.begin[w] >> split.shift; ce++) {
+                if (coarse.count[ce] > 0) {
+                    scan.moveToLeft(coarse.count[ce], coarse.sum, ce * dimensionality);
+                }
+            }
+            for (; ce < coarse.count.length && coarse.getBin(ce) <= split.end[w] >> split.shift; ce++) {
+                //these buckets are replaced by the exact bins of the window
+            }
+            MarginalDistribution window = split.windows[w];
+            for (int e = 0; e < window.count.length; e++) {
+                int pos = split.begin[w] + window.getBin(e);
+                if (pos >= width - 1) {
+                    break;
+                }
+                if (window.count[e] == 0) {
+                    continue;
+                }
+                double deltaSSQ = scan.moveToLeft(window.count[e], window.sum, e * dimensionality);
+                if (scan.nRight == 0) {
+                    return new BestSplitResult(bestPosition, maxDeltaSSQ);
+                }
+                if (deltaSSQ > maxDeltaSSQ) {
+                    maxDeltaSSQ = deltaSSQ;
+                    bestPosition = getCoordinate(dimension, pos);
+                }
             }
         }
         return new BestSplitResult(bestPosition, maxDeltaSSQ);
     }
 
+    //the global values are assigned by every request on the block, since the requests of a block can reach the workers in any order
+    public synchronized void setGlobalStatistics(int globalN, double[] globalLS, double[] globalSS) {
+        this.globalN = globalN;
+        this.globalLS = globalLS;
+        this.globalSS = globalSS;
+    }
+
     //splits the block, partition data and computes the marginals, LS, and SS
     //this method is for the worker
-    public WorkerClusterBlock[] split(int splitDimension, int splitPosition, int leftId, int rightId) {
+    public synchronized WorkerClusterBlock[] split(int splitDimension, int splitPosition, int leftId, int rightId) {
         Range[] newRanges = r.getSplit(splitDimension, splitPosition);
-        ArrayList<DataSetPoint> dataLeft = new ArrayList<>();
-        ArrayList<DataSetPoint> dataRight = new ArrayList<>();
-        for (DataSetPoint p : data) {
-            if (p.p[splitDimension] <= splitPosition) {
-                dataLeft.add(p);
-            } else {
-                dataRight.add(p);
-            }
+        //no other lock is acquired while the partitioning excludes the scans, since the scanning threads can hold the locks of the blocks
+        int mid;
+        pointsLock.writeLock().lock();
+        try {
+            mid = partition(splitDimension, splitPosition);
+        } finally {
+            pointsLock.writeLock().unlock();
         }
-        data.clear();
+        int nLeft = mid - from;
+        int nRight = to - mid;
         sd = splitDimension;
         sp = splitPosition;
-        WorkerClusterBlock leftBlock = new WorkerClusterBlock(dataLeft, newRanges[0], leftId, dataLeft.size() <= dataRight.size());
-        WorkerClusterBlock rightBlock = new WorkerClusterBlock(dataRight, newRanges[1], rightId, dataLeft.size() > dataRight.size());
+        WorkerClusterBlock leftBlock = new WorkerClusterBlock(store, points, from, mid, newRanges[0], dictionary, leftId);
+        WorkerClusterBlock rightBlock = new WorkerClusterBlock(store, points, mid, to, newRanges[1], dictionary, rightId);
         leftBlock.parent = this;
         rightBlock.parent = this;
+        leftBlock.pointsLock = pointsLock;
+        rightBlock.pointsLock = pointsLock;
+        leftBlock.budget = budget;
+        rightBlock.budget = budget;
+        leftBlock.pool = pool;
+        rightBlock.pool = pool;
+        leftBlock.approximateWidth = approximateWidth;
+        rightBlock.approximateWidth = approximateWidth;
         lc = leftBlock;
         rc = rightBlock;
         leftBlock.sibling = rightBlock;
         rightBlock.sibling = leftBlock;
 
-        (dataLeft.size() > dataRight.size() ? leftBlock : rightBlock).computeMarginalsFromSibling();
+        //the smaller child scans its points, the larger one subtracts the sums of the sibling from those of the parent
+        //the marginals of the children are computed only when they are requested
+        pointsLock.readLock().lock();
+        try {
+            (nLeft <= nRight ? leftBlock : rightBlock).computeLocalLSSSfromData();
+        } finally {
+            pointsLock.readLock().unlock();
+        }
+        (nLeft > nRight ? leftBlock : rightBlock).computeLocalLSSSfromSibling();
+        //the global marginals were only needed to choose the split, while the local ones are kept until both the children have their own
+        for (int k = 0; k < dimensionality; k++) {
+            synchronized (marginalLocks[k]) {
+                globalMarginals[k] = null;
+            }
+        }
 
         return new WorkerClusterBlock[]{leftBlock, rightBlock};
     }
 
-    private void computeMarginalsFromSibling() {
-        localN = data.size();
-        localMarginals = new MarginalDistributionWithSquares[dimensionality];
-        for (int i = 0; i < dimensionality; i++) {
-            if (i == parent.sd) {
-                if (this==parent.lc) {
-                    localMarginals[i] = parent.localMarginals[i].getCopy(0, parent.sp-parent.r.inf[i]);
-                } else {
-                    localMarginals[i] = parent.localMarginals[i].getCopy(parent.sp-parent.r.inf[i]+1, parent.localMarginals[i].count.length-1);
-                }
-            } else {
-                localMarginals[i] = parent.localMarginals[i].getCopy();
-                localMarginals[i].sub(sibling.localMarginals[i]);
+    //the points are partitioned in place: the left child gets points[from..mid-1], the right child gets points[mid..to-1]
+    //returns mid
+    private int partition(int splitDimension, int splitPosition) {
+        int i = from;
+        int j = to - 1;
+        while (true) {
+            while (i <= j && store.getCoord(points[i], splitDimension) <= splitPosition) {
+                i++;
             }
+            while (i < j && store.getCoord(points[j], splitDimension) > splitPosition) {
+                j--;
+            }
+            if (i >= j) {
+                break;
+            }
+            int t = points[i];
+            points[i] = points[j];
+            points[j] = t;
+            i++;
+            j--;
         }
-        computeLocalLSSSfromMarginals();
+        return i;
     }
 
     @Override
@@ -283,19 +870,19 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
         return r;
     }
 
-    public double[] getLocalLS() {
+    public long[] getLocalLS() {
         return localLS;
     }
 
-    public void setLocalLS(double[] localLS) {
+    public void setLocalLS(long[] localLS) {
         this.localLS = localLS;
     }
 
-    public double[] getLocalSS() {
+    public Int128Array getLocalSS() {
         return localSS;
     }
 
-    public void setLocalSS(double[] localSS) {
+    public void setLocalSS(Int128Array localSS) {
         this.localSS = localSS;
     }
 
@@ -331,7 +918,7 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
         this.globalN = globalN;
     }
 
-    public void addLocalLS(double[] LS) {
+    public void addLocalLS(long[] LS) {
         for (int i = 0; i < LS.length; i++) {
             this.localLS[i] += LS[i];
         }
@@ -347,10 +934,8 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
         }
     }
 
-    public void addLocalSS(double[] SS) {
-        for (int i = 0; i < SS.length; i++) {
-            this.localSS[i] += SS[i];
-        }
+    public void addLocalSS(Int128Array SS) {
+        localSS.add(SS);
     }
 
     public void addGlobalSS(double[] SS) {
@@ -367,26 +952,28 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
         return centroid;
     }
 
-    public MarginalDistribution[] getLocalMarginals() {
-        return localMarginals;
-    }
-
     public MarginalDistribution[] getGlobalMarginals() {
         return globalMarginals;
     }
 
     public boolean valleyCriterion(int dimension, double delta) {
+        if (!isLeaf()) { //the criterion was already satisfied on another dimension, and the block was split
+            return false;
+        }
 
-        int width = r.sup[dimension] - r.inf[dimension] + 1;
+        //with coarsened marginals, the criterion is evaluated on the buckets
+        int shift = getCoarseningShift(dimension);
+        int width = shift == 0 ? r.sup[dimension] - r.inf[dimension] + 1 : ((getMarginalWidth(dimension) - 1) >> shift) + 1;
         int windowSemiWidth = width / 20;
         if (windowSemiWidth < 2) {
             return false;
         }
 
+        int[] count = getDenseCount(dimension);
         double[] mobileAvg = new double[width];
         int currentWindowsCount = 0;
         for (int j = 0; j < windowSemiWidth; j++) {
-            currentWindowsCount += globalMarginals[dimension].count[j];
+            currentWindowsCount += count[j];
         }
         int currentWindowSize = windowSemiWidth;
         double maxMobileAvg = mobileAvg[0];
@@ -405,11 +992,11 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
                 minMobileAvg = mobileAvg[j];
             }
             if (j >= windowSemiWidth) {
-                currentWindowsCount -= globalMarginals[dimension].count[j - windowSemiWidth];
+                currentWindowsCount -= count[j - windowSemiWidth];
                 currentWindowSize--;
             }
             if (j + windowSemiWidth < mobileAvg.length) {
-                currentWindowsCount += globalMarginals[dimension].count[j + windowSemiWidth];
+                currentWindowsCount += count[j + windowSemiWidth];
                 currentWindowSize++;
             }
         }
@@ -426,7 +1013,7 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
         boolean[] localMaxima = new boolean[width];
         int lastRestrictedPositionType = 0; //-1: min, 1: max
 
-        if (parent != null && maxMobileAvg < 1.0 * globalN / r.getWidth(dimension)) {
+        if (parent != null && maxMobileAvg < 1.0 * globalN / width) {
             return false;
         }
 
@@ -512,27 +1099,62 @@ public class WorkerClusterBlock implements Comparable<WorkerClusterBlock> {
         return false;
     }
 
+    //the global counts with one bin for every integer of the range - with a dictionary, the bins of the missing values are empty
+    //the valley criterion needs all the bins, so sparse marginals are expanded
+    //coarsened marginals have one bin for every bucket, also with a dictionary
+    private int[] getDenseCount(int dimension) {
+        MarginalDistribution marginals = getGlobalMarginals(dimension);
+        if ((dictionary == null || isBestSplitApproximated(dimension)) && !marginals.isSparse()) {
+            return marginals.count;
+        }
+        if (isBestSplitApproximated(dimension)) {
+            int[] res = new int[marginals.getWidth()];
+            for (int e = 0; e < marginals.count.length; e++) {
+                res[marginals.getBin(e)] = marginals.count[e];
+            }
+            return res;
+        }
+        int[] res = new int[r.getWidth(dimension)];
+        int[] count = marginals.count;
+        for (int e = 0; e < count.length; e++) {
+            res[getCoordinate(dimension, marginals.getBin(e)) - r.inf[dimension]] = count[e];
+        }
+        return res;
+    }
+
     //if the required global marginals were not initialized, they are copied from local marginals
+    //when the best split is approximated, the bins are merged, so that less data are exchanged by the workers
     public MarginalDistribution getGlobalMarginals(int dimension) {
-        if (globalMarginals[dimension] == null) {
-            globalMarginals[dimension] = localMarginals[dimension].getSimpleCopy();
+        synchronized (marginalLocks[dimension]) {
+            if (globalMarginals[dimension] == null) {
+                int shift = getCoarseningShift(dimension);
+                globalMarginals[dimension] = shift == 0 ? getLocalMarginals(dimension).getSimpleCopy() : getLocalMarginals(dimension).getCoarsened(shift);
+            }
+            return globalMarginals[dimension];
         }
-        return globalMarginals[dimension];
     }
 
     public void sumToGlobalMarginals(MarginalDistribution marginals, int dimension) {
-        if (globalMarginals[dimension] == null) {
-            globalMarginals[dimension] = localMarginals[dimension].getSimpleCopy();
+        synchronized (marginalLocks[dimension]) {
+            MarginalDistribution m = getGlobalMarginals(dimension);
+            m.add(marginals);
+            m.normalize();
         }
-        globalMarginals[dimension].add(marginals);
     }
 
     public int rangeCount(Range range) {
         int res=0;
-        for (DataSetPoint d:data) {
-            if (range.contains(d.p)) {
-                res++;
+        int[] p = new int[dimensionality];
+        pointsLock.readLock().lock();
+        try {
+            for (int j = from; j < to; j++) {
+                store.getPoint(points[j], p);
+                if (range.contains(p)) {
+                    res += store.getWeight(points[j]);
+                }
             }
+        } finally {
+            pointsLock.readLock().unlock();
         }
         return res;
     }
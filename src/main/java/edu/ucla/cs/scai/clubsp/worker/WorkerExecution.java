@@ -16,36 +16,37 @@
 package edu.ucla.cs.scai.clubsp.worker;
 
 import edu.ucla.cs.scai.clubsp.commons.BestSplitResult;
-import edu.ucla.cs.scai.clubsp.commons.DataSetPoint;
+import edu.ucla.cs.scai.clubsp.commons.CoordinateDictionary;
+import edu.ucla.cs.scai.clubsp.commons.ExecutionOptions;
+import edu.ucla.cs.scai.clubsp.commons.IntObjectMap;
 import edu.ucla.cs.scai.clubsp.commons.MarginalDistribution;
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistributionWithSquares;
 import edu.ucla.cs.scai.clubsp.commons.Range;
 import edu.ucla.cs.scai.clubsp.commons.SplitResult;
 import edu.ucla.cs.scai.clubsp.commons.Utils;
 import edu.ucla.cs.scai.clubsp.master.Sequence;
-import edu.ucla.cs.scai.clubsp.messages.ComputeBestSplitResponse;
-import edu.ucla.cs.scai.clubsp.messages.ComputeValleyCriterionResponse;
+import edu.ucla.cs.scai.clubsp.messages.EvaluateBlockResponse;
+import edu.ucla.cs.scai.clubsp.messages.ExecutionMessage;
 import edu.ucla.cs.scai.clubsp.messages.FinalRefinementResponse;
 import edu.ucla.cs.scai.clubsp.messages.InitRootResponse;
 import edu.ucla.cs.scai.clubsp.messages.IntermediateRefinementResponse;
 import edu.ucla.cs.scai.clubsp.messages.LoadDataSetResponse;
+import edu.ucla.cs.scai.clubsp.messages.ReceiveMarginalWindowsRequest;
 import edu.ucla.cs.scai.clubsp.messages.ReceiveMarginalsRequest;
 import edu.ucla.cs.scai.clubsp.messages.ReceiveMarginalsResponse;
+import edu.ucla.cs.scai.clubsp.messages.ReduceMarginalsRequest;
 import edu.ucla.cs.scai.clubsp.messages.RestrictedCountResponse;
+import edu.ucla.cs.scai.clubsp.messages.SendMarginalWindowsRequest;
 import edu.ucla.cs.scai.clubsp.messages.SplitResponse;
-import java.io.BufferedReader;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Objects;
-import java.util.StringTokenizer;
 
 /**
  *
@@ -55,70 +56,93 @@ public class WorkerExecution {
 
     String dataSetId;
     String executionId;
-    HashMap<Integer, WorkerClusterBlock> blocks = new HashMap<>();
+    final BlockRegistry blocks = new BlockRegistry();
+    final IntObjectMap<BlockEvaluation> evaluations = new IntObjectMap<>(); //the evaluations waiting for approximate best splits, by block id
+    final IntObjectMap<SpeculativeEvaluation> speculations = new IntObjectMap<>(); //the evaluations started after a split, by block id
     int dimensionality;
-    ArrayList<DataSetPoint> dataSet;
+    LoadedDataSet loadedDataSet;
+    PointStore dataSet;
     Sequence sequence = new Sequence();
     int dataSetSize;
     long initTime;
     Range localDomain, globalDomain;
     Worker worker;
+    ArrayList<String> workerIds; //the workers of the execution, in the order used by the master
     double scaleFactor;
+    ExecutionOptions options;
+    MarginalMemoryBudget marginalMemoryBudget;
     private static final double radiusMultiplier = 3;
 
-    public WorkerExecution(final Worker worker, final String executionId, final String dataSetId, final double scaleFactor) {
+    boolean finished = false; //the execution was completed or aborted, and the data set was released
+    boolean rootInitialized = false;
+    ArrayList<ExecutionMessage> messagesWaitingForRoot = new ArrayList<>(); //the requests received before the root was built
+
+    public WorkerExecution(final Worker worker, final String executionId, final String dataSetId, final ArrayList<String> workerIds, final double scaleFactor, final ExecutionOptions options, final Range knownGlobalDomain) {
         this.worker = worker;
+        this.workerIds = new ArrayList<>(workerIds);
         this.executionId = executionId;
         this.dataSetId = dataSetId;
         this.scaleFactor = scaleFactor;
+        this.options = options;
+        marginalMemoryBudget = new MarginalMemoryBudget(options.marginalMemory * 1024L * 1024L);
         new Thread() {
 
             @Override
             public void run() {
                 try {
-                    BufferedReader in = new BufferedReader(new FileReader(worker.datasetsPath + dataSetId));
-                    dataSet = new ArrayList<>();
-                    String l = in.readLine();
-                    if (l != null && l.trim().length() > 0) {
-                        StringTokenizer st = new StringTokenizer(l, ", \t");
-                        dimensionality = st.countTokens();
-                    } else {
-                        dimensionality = 0;
-                    }
-                    int j = 0;
-                    int[] inf = new int[dimensionality];
-                    int[] sup = new int[dimensionality];
-                    for (int i = 0; i < dimensionality; i++) {
-                        inf[i] = Integer.MAX_VALUE;
-                        sup[i] = Integer.MIN_VALUE;
-                    }
-                    while (l != null && l.trim().length() > 0) {
-                        StringTokenizer st = new StringTokenizer(l, ", \t");
-                        int[] p = new int[dimensionality];
-                        for (int i = 0; i < dimensionality; i++) {
-                            p[i] = (int) (Integer.parseInt(st.nextToken()) / scaleFactor + 0.5);
-                            inf[i] = Math.min(p[i], inf[i]);
-                            sup[i] = Math.max(p[i], sup[i]);
-                        }
-                        dataSet.add(new DataSetPoint(p, j));
-                        l = in.readLine();
-                        j++;
+                    //if the data set was loaded by a previous execution, it is taken from the cache
+                    //if the global domain is known, the marginals of the root are built while loading
+                    if (!setLoadedDataSet(worker.dataSetCache.acquire(dataSetId, scaleFactor, options.weighted, knownGlobalDomain))) {
+                        return;
                     }
+                    dataSet = loadedDataSet.getStore();
+                    dimensionality = dataSet.getDimensionality();
+                    localDomain = loadedDataSet.getLocalDomain();
                     dataSetSize = dataSet.size();
-                    localDomain = new Range(inf, sup);
-                    worker.sendMessageToMaster(new LoadDataSetResponse(executionId, localDomain));
-                } catch (IOException | NumberFormatException e) {
+                    if (options.dictionary) {
+                        //the master merges the values of all the workers into the global dictionary
+                        worker.sendMessageToMaster(new LoadDataSetResponse(executionId, localDomain, loadedDataSet.getDictionary()));
+                    } else if (knownGlobalDomain != null && knownGlobalDomain.getDimensionality() == dimensionality && knownGlobalDomain.contains(localDomain)) {
+                        //the global domain was provided by the master, the root can be built immediately
+                        initRoot(knownGlobalDomain, null, loadedDataSet.getRootMarginals(knownGlobalDomain));
+                    } else {
+                        //if the global domain provided by the master is not consistent with the local data, the master is notified
+                        worker.sendMessageToMaster(new LoadDataSetResponse(executionId, localDomain, null));
+                    }
+                } catch (Exception e) {
+                    //the execution cannot go on, so its reference to the data set is released
                     e.printStackTrace();
+                    worker.finishExecution(WorkerExecution.this);
                 }
             }
         }.start();
     }
 
+    //returns false if the execution was aborted while the data set was loaded - in this case the data set is released
+    private synchronized boolean setLoadedDataSet(LoadedDataSet loaded) {
+        if (finished) {
+            worker.dataSetCache.release(loaded);
+            return false;
+        }
+        loadedDataSet = loaded;
+        return true;
+    }
+
+    //the data set is released only once, even if the execution is aborted while it is completed
+    synchronized void releaseDataSet() {
+        if (!finished) {
+            finished = true;
+            if (loadedDataSet != null) {
+                worker.dataSetCache.release(loadedDataSet);
+            }
+        }
+    }
+
     public String getDataSet() {
         return dataSetId;
     }
 
-    public HashMap<Integer, WorkerClusterBlock> getBlockMap() {
+    public BlockRegistry getBlocks() {
         return blocks;
     }
 
@@ -144,13 +168,36 @@ public class WorkerExecution {
         return true;
     }
 
-    public void initRoot(Range globalDomain) {
+    //if globalDictionary is not null, the marginals of the blocks are indexed by the codes of the dictionary
+    public void initRoot(Range globalDomain, CoordinateDictionary globalDictionary) {
+        initRoot(globalDomain, globalDictionary, null);
+    }
+
+    //rootMarginals are the marginals of the root built while loading, or null if the data must be scanned
+    private void initRoot(Range globalDomain, CoordinateDictionary globalDictionary, MarginalDistributionWithSquares[] rootMarginals) {
         try {
             this.globalDomain = globalDomain;
             long startTime = System.currentTimeMillis();
-            //data are scanned, marginals, LS, SS and SSQ are computed
-            WorkerClusterBlock root = WorkerClusterBlock.initRoot(dataSet, globalDomain, 0);
-            blocks.put(0, root);
+            WorkerClusterBlock root;
+            if (rootMarginals != null) {
+                root = WorkerClusterBlock.initRoot(dataSet, globalDomain, 0, rootMarginals);
+            } else {
+                //data are scanned, marginals, LS, SS and SSQ are computed
+                root = WorkerClusterBlock.initRoot(dataSet, globalDomain, globalDictionary, 0);
+            }
+            root.setComputePool(worker.computePool);
+            root.setMarginalMemoryBudget(marginalMemoryBudget);
+            root.setApproximateWidth(options.approximateWidth);
+            blocks.put(root);
+            ArrayList<ExecutionMessage> waiting;
+            synchronized (this) {
+                rootInitialized = true;
+                waiting = messagesWaitingForRoot;
+                messagesWaitingForRoot = null;
+            }
+            for (ExecutionMessage msg : waiting) {
+                worker.submitMessage(msg);
+            }
             initTime = System.currentTimeMillis() - startTime;
             try (Socket socket = new Socket(worker.masterIp, worker.masterPort);
                     ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());) {
@@ -159,72 +206,275 @@ public class WorkerExecution {
                 e.printStackTrace();
             }
         } catch (Exception e) {
+            //the root could not be built, so the execution cannot go on
             e.printStackTrace();
+            worker.finishExecution(this);
         }
 
     }
 
-    public void sendMarginals(int blockId, int dimension, String receiverId) {
-        MarginalDistribution marginals = blocks.get(blockId).getGlobalMarginals(dimension);
-        worker.sendMessageToWorker(receiverId, new ReceiveMarginalsRequest(executionId, blockId, dimension, marginals));
+    //the requests on the root can arrive before the root is built, when the master knows the root from the catalog
+    //in this case, the request is kept and submitted again when the root is built, instead of blocking a thread
+    //returns true if the message was deferred
+    public synchronized boolean deferUntilRootInitialized(ExecutionMessage msg) {
+        if (rootInitialized) {
+            return false;
+        }
+        messagesWaitingForRoot.add(msg);
+        return true;
     }
 
-    public void receiveMarginals(final int blockId, final int dimension, final MarginalDistribution marginals) {
-        blocks.get(blockId).sumToGlobalMarginals(marginals, dimension);
-        worker.sendMessageToMaster(new ReceiveMarginalsResponse(executionId, blockId, dimension));
+    private WorkerClusterBlock getBlock(int blockId) {
+        return blocks.get(blockId);
     }
 
-    public void computeBestSplit(int blockId, int dimension, int globalN, double[] globalLS, double[] globalSS) {
-        WorkerClusterBlock block = blocks.get(blockId);
-        block.setGlobalN(globalN);
-        block.setGlobalLS(globalLS);
-        block.setGlobalSS(globalSS);
-        BestSplitResult split = block.computeBestSplit(dimension);
-        try (Socket socket = new Socket(worker.masterIp, worker.masterPort);
-                ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
-            out.writeObject(new ComputeBestSplitResponse(executionId, blockId, dimension, split));
-        } catch (Exception e) {
-            e.printStackTrace();
+    public void sendMarginals(int[] blockIds, int dimension, String receiverId) {
+        MarginalDistribution[] marginals = new MarginalDistribution[blockIds.length];
+        for (int i = 0; i < blockIds.length; i++) {
+            marginals[i] = getBlock(blockIds[i]).getGlobalMarginals(dimension);
         }
+        worker.sendMessageToWorker(receiverId, new ReceiveMarginalsRequest(executionId, blockIds, dimension, marginals));
     }
 
-    public void doSplit(int blockId, int splitDimension, int splitPosition, int leftId, int rightId, int globalN, double[] globalLS, double globalSS[]) {
-        WorkerClusterBlock block = blocks.get(blockId);
-        //the following three values could be already assigned at this point, because the computeBestSplit was previously called on this worker
-        //however, it is possibile the for some workers the values were not assigned yet
-        block.globalN = globalN;
-        block.globalLS = globalLS;
-        block.globalSS = globalSS;
-        WorkerClusterBlock[] newBlocks = block.split(splitDimension, splitPosition, leftId, rightId);
-        blocks.put(leftId, newBlocks[0]);
-        blocks.put(rightId, newBlocks[1]);
-        worker.sendMessageToMaster(new SplitResponse(executionId, blockId,
-                new SplitResult(newBlocks[0].localN, newBlocks[0].localLS, newBlocks[0].localSS,
-                        newBlocks[1].localN, newBlocks[1].localLS, newBlocks[1].localSS)));
+    public void receiveMarginals(int[] blockIds, int dimension, MarginalDistribution[] marginals) {
+        for (int i = 0; i < blockIds.length; i++) {
+            getBlock(blockIds[i]).sumToGlobalMarginals(marginals[i], dimension);
+        }
+        worker.sendMessageToMaster(new ReceiveMarginalsResponse(executionId, blockIds, dimension));
     }
 
-    public void computeValleyCriterion(int blockId, int dimension, double delta) {
-        WorkerClusterBlock block = blocks.get(blockId);
-        boolean satisfied = block.valleyCriterion(dimension, delta);
-        worker.sendMessageToMaster(new ComputeValleyCriterionResponse(executionId, blockId, dimension, satisfied));
+    //computes the best splits and the valley criterion of the blocks on the given dimensions, whose global marginals are owned by this worker
+    //the result is sent when all the best splits are known - the approximate ones need the windows of the other workers
+    //with speculative evaluation, a dimension whose global marginals are not complete yet is evaluated when they are
+    public void evaluateBlocks(int[] blockIds, int[] dimensions, int[] globalN, double[][] globalLS, double[][] globalSS, double delta) {
+        BlockEvaluation evaluation = new BlockEvaluation(blockIds, dimensions, delta);
+        for (int i = 0; i < blockIds.length; i++) {
+            getBlock(blockIds[i]).setGlobalStatistics(globalN[i], globalLS[i], globalSS[i]);
+        }
+        synchronized (evaluations) {
+            for (int blockId : blockIds) {
+                evaluations.put(blockId, evaluation);
+            }
+        }
+        for (int blockId : blockIds) {
+            SpeculativeEvaluation speculation;
+            synchronized (speculations) {
+                speculation = speculations.get(blockId);
+            }
+            for (int dimension : dimensions) {
+                if (speculation == null || speculation.requestEvaluation(dimension)) {
+                    evaluateBlock(blockId, dimension, speculation);
+                }
+            }
+        }
+    }
+
+    //the global marginals of the block on the dimension are complete
+    private void evaluateBlock(int blockId, int dimension, SpeculativeEvaluation speculation) {
+        WorkerClusterBlock block = getBlock(blockId);
+        BlockEvaluation evaluation;
+        synchronized (evaluations) {
+            evaluation = evaluations.get(blockId);
+        }
+        evaluation.setValleyCriterion(blockId, dimension, block.valleyCriterion(dimension, evaluation.delta));
+        if (block.isBestSplitApproximated(dimension)) {
+            //the global marginals are coarsened: the exact marginals of the most promising windows are collected from all the workers
+            ApproximateSplit split = block.startApproximateBestSplit(dimension, workerIds.size());
+            for (String workerId : workerIds) {
+                if (!workerId.equals(worker.id)) {
+                    worker.sendMessageToWorker(workerId, new SendMarginalWindowsRequest(executionId, blockId, dimension, split.getBegin(), split.getEnd(), worker.id));
+                }
+            }
+            receiveMarginalWindows(blockId, dimension, block.getLocalMarginalWindows(dimension, split.getBegin(), split.getEnd()));
+        } else {
+            BestSplitResult split = null;
+            if (speculation != null) {
+                //the split computed in advance is used only if the master has the same global statistics
+                split = speculation.getSplit(dimension, block.getGlobalN(), block.getGlobalLS());
+            }
+            if (split == null) {
+                split = block.computeBestSplit(dimension);
+            }
+            setBestSplit(blockId, dimension, split);
+        }
+    }
+
+    private void setBestSplit(int blockId, int dimension, BestSplitResult split) {
+        BlockEvaluation evaluation;
+        synchronized (evaluations) {
+            evaluation = evaluations.get(blockId);
+        }
+        if (evaluation.setSplit(blockId, dimension, split)) {
+            synchronized (evaluations) {
+                for (int id : evaluation.blockIds) {
+                    evaluations.remove(id);
+                }
+            }
+            worker.sendMessageToMaster(new EvaluateBlockResponse(executionId, evaluation.blockIds, evaluation.dimensions, evaluation.splits, evaluation.valleyCriterion));
+        }
+    }
+
+    public void sendMarginalWindows(int blockId, int dimension, int[] begin, int[] end, String receiverId) {
+        MarginalDistribution[] windows = getBlock(blockId).getLocalMarginalWindows(dimension, begin, end);
+        worker.sendMessageToWorker(receiverId, new ReceiveMarginalWindowsRequest(executionId, blockId, dimension, windows));
+    }
+
+    //when the windows of all the workers are received, the approximate best split is completed and sent to the master
+    public void receiveMarginalWindows(int blockId, int dimension, MarginalDistribution[] windows) {
+        WorkerClusterBlock block = getBlock(blockId);
+        if (block.addApproximateSplitWindows(dimension, windows)) {
+            setBestSplit(blockId, dimension, block.completeApproximateBestSplit(dimension));
+        }
+    }
+
+    public void doSplit(int[] blockIds, int[] splitDimensions, int[] splitPositions, int[] leftIds, int[] rightIds, int[] globalN, double[][] globalLS, double[][] globalSS) {
+        SplitResult[] results = new SplitResult[blockIds.length];
+        for (int i = 0; i < blockIds.length; i++) {
+            WorkerClusterBlock block = getBlock(blockIds[i]);
+            //the following three values could be already assigned at this point, because the best split was previously computed on this worker
+            //however, it is possibile the for some workers the values were not assigned yet
+            block.setGlobalStatistics(globalN[i], globalLS[i], globalSS[i]);
+            WorkerClusterBlock[] newBlocks = block.split(splitDimensions[i], splitPositions[i], leftIds[i], rightIds[i]);
+            blocks.put(newBlocks[0]);
+            blocks.put(newBlocks[1]);
+            results[i] = new SplitResult(newBlocks[0].localN, newBlocks[0].localLS, newBlocks[0].localSS,
+                    newBlocks[1].localN, newBlocks[1].localLS, newBlocks[1].localSS);
+        }
+        final ArrayList<WorkerClusterBlock> newBlocks = new ArrayList<>();
+        if (options.speculativeEvaluation) {
+            synchronized (speculations) {
+                for (int i = 0; i < blockIds.length; i++) {
+                    speculations.remove(blockIds[i]);
+                    //the state must exist before the master is notified, since the evaluation of the children can be requested immediately
+                    getSpeculation(leftIds[i]);
+                    getSpeculation(rightIds[i]);
+                    newBlocks.add(getBlock(leftIds[i]));
+                    newBlocks.add(getBlock(rightIds[i]));
+                }
+            }
+        }
+        worker.sendMessageToMaster(new SplitResponse(executionId, blockIds, results));
+        //the evaluations are run by the message pool, like the evaluations requested by the master
+        for (final WorkerClusterBlock newBlock : newBlocks) {
+            worker.submitTask(new Runnable() {
+                @Override
+                public void run() {
+                    startSpeculativeEvaluation(newBlock);
+                }
+            });
+        }
+    }
+
+    //the state of the speculative evaluation of a block is created by the split or by the first contribution of another worker,
+    //whichever comes first - the caller must hold the lock of speculations
+    private SpeculativeEvaluation getSpeculation(int blockId) {
+        SpeculativeEvaluation res = speculations.get(blockId);
+        if (res == null) {
+            int[] contributions = new int[dimensionality];
+            for (int i = 0; i < dimensionality; i++) {
+                contributions[i] = getNumberOfContributions(getReductionIndex(i));
+            }
+            res = new SpeculativeEvaluation(blockId, contributions);
+            speculations.put(blockId, res);
+        }
+        return res;
+    }
+
+    //the position of this worker in the allocation of the dimension planned by the master (see MarginalComputationExecutionPlan)
+    //the first worker of the allocation is the aggregator of the dimension
+    private int getReductionIndex(int dimension) {
+        int n = workerIds.size();
+        return ((workerIds.indexOf(worker.id) - dimension) % n + n) % n;
+    }
+
+    //at every step of the plan, the workers with odd position send their marginals to the previous one, and are removed
+    //thus, the worker at position k receives from the positions k+2^j, for every 2^j lower than the lowest bit of k
+    private int getNumberOfContributions(int k) {
+        int n = workerIds.size();
+        int res = 0;
+        for (int step = 1; step < n && (k == 0 || step < (k & -k)); step *= 2) {
+            if (k + step < n) {
+                res++;
+            }
+        }
+        return res;
+    }
+
+    private void startSpeculativeEvaluation(WorkerClusterBlock block) {
+        SpeculativeEvaluation speculation;
+        synchronized (speculations) {
+            speculation = speculations.get(block.id);
+        }
+        for (int i = 0; i < dimensionality; i++) {
+            //the global marginals are initialized with the local ones
+            block.getGlobalMarginals(i);
+            if (speculation.addOwnContribution(block, i)) {
+                reductionCompleted(block, i, speculation);
+            }
+        }
+    }
+
+    //the marginals received from another worker, following the plan of the master
+    public void reduceMarginals(int blockId, int dimension, MarginalDistribution marginals) {
+        SpeculativeEvaluation speculation;
+        synchronized (speculations) {
+            speculation = getSpeculation(blockId);
+        }
+        if (speculation.addContribution(dimension, marginals)) {
+            reductionCompleted(getBlock(blockId), dimension, speculation);
+        }
+    }
+
+    //the marginals of this worker and of the workers below it were summed: they are sent to the next worker of the plan,
+    //or, if this is the aggregator, the best split is computed, using the global statistics derived from the global marginals
+    private void reductionCompleted(WorkerClusterBlock block, int dimension, SpeculativeEvaluation speculation) {
+        int k = getReductionIndex(dimension);
+        MarginalDistribution marginals = block.getGlobalMarginals(dimension);
+        if (k > 0) {
+            String receiverId = workerIds.get((dimension + k - (k & -k)) % workerIds.size());
+            worker.sendMessageToWorker(receiverId, new ReduceMarginalsRequest(executionId, block.id, dimension, marginals));
+            return;
+        }
+        int globalN = marginals.getTotalCount();
+        long[] sum = marginals.getTotalSum();
+        double[] globalLS = new double[dimensionality];
+        for (int i = 0; i < dimensionality; i++) {
+            globalLS[i] = sum[i];
+        }
+        BestSplitResult split = null;
+        if (!block.isBestSplitApproximated(dimension)) {
+            split = block.computeBestSplit(dimension, globalN, globalLS);
+        }
+        if (speculation.setSplit(dimension, split, globalN, globalLS)) {
+            evaluateBlock(block.id, dimension, speculation);
+        }
+    }
+
+    //the blocks are clusters and will not be split anymore
+    public void finalizeBlocks(int[] blockIds) {
+        for (int blockId : blockIds) {
+            getBlock(blockId).releaseMarginals();
+        }
+        if (options.speculativeEvaluation) {
+            synchronized (speculations) {
+                for (int blockId : blockIds) {
+                    speculations.remove(blockId);
+                }
+            }
+        }
     }
 
     public void computeRestrictedCount(ArrayList<Integer> blockIds, ArrayList<Range> restrictedRanges) {
         ArrayList<Integer> count = new ArrayList<>();
         for (int i = 0; i < blockIds.size(); i++) {
-            int c = blocks.get(blockIds.get(i)).rangeCount(restrictedRanges.get(i));
+            int c = getBlock(blockIds.get(i)).rangeCount(restrictedRanges.get(i));
             count.add(c);
         }
         worker.sendMessageToMaster(new RestrictedCountResponse(executionId, blockIds, count));
     }
 
     public void doIntermediateRefinement(ArrayList<Integer> clusterBlockIds, ArrayList<double[]> originalCentroids, ArrayList<double[]> originalDetailedRadii) {
-        ArrayList<WorkerClusterBlock> allLeafBlocks = new ArrayList<>();
-        for (WorkerClusterBlock block : blocks.values()) {
-            if (block.isLeaf()) {
-                allLeafBlocks.add(block);
-            }
-        }
+        ArrayList<WorkerClusterBlock> allLeafBlocks = blocks.getLeaves();
         ArrayList<WorkerClusterBlock> clusterBlocks = new ArrayList<>();
         HashMap<Integer, Double> minimumDetailedRadii = new HashMap<>();
         HashMap<Integer, double[]> centroids = new HashMap<>();
@@ -249,10 +499,11 @@ public class WorkerExecution {
             block.globalLS = new double[dimensionality];
             block.globalSS = new double[dimensionality];
         }
+        int[] p = new int[dimensionality];
         for (WorkerClusterBlock n : allLeafBlocks) {
             HashSet<Integer> reachableClusters = reachability.get(n.id);
-            for (DataSetPoint point : n.data) {
-                int[] p = point.p;
+            for (int j = n.from; j < n.to; j++) {
+                dataSet.getPoint(n.points[j], p);
                 WorkerClusterBlock nearestClusterBlock = null;
                 double minDist = Double.POSITIVE_INFINITY;
                 boolean outlier = true;
@@ -268,10 +519,11 @@ public class WorkerExecution {
                     }
                 }
                 if (!outlier) {
-                    nearestClusterBlock.globalN++;
+                    int weight = dataSet.getWeight(n.points[j]);
+                    nearestClusterBlock.globalN += weight;
                     for (int i = 0; i < dimensionality; i++) {
-                        nearestClusterBlock.globalLS[i] += p[i];
-                        nearestClusterBlock.globalSS[i] += p[i] * p[i];
+                        nearestClusterBlock.globalLS[i] += 1.0 * weight * p[i];
+                        nearestClusterBlock.globalSS[i] += 1.0 * weight * p[i] * p[i];
                     }
                 }
             }
@@ -325,46 +577,56 @@ public class WorkerExecution {
     }
 
     public void doFinalRefinement(ArrayList<double[]> centroids, ArrayList<double[]> detailedRadii) {
-        int[] clusterAssignment = new int[dataSet.size()];
-        int[] clusterN = new int[centroids.size()];
-        double[][] clusterLS = new double[centroids.size()][dimensionality];
-        double[][] clusterSS = new double[centroids.size()][dimensionality];
-        int nOutliers = 0;
-        for (DataSetPoint point : dataSet) {
-            int[] p = point.p;
-            int bestId = -1;
-            double minDist = Double.POSITIVE_INFINITY;
-            boolean outlier = true;
-            for (int i = 0; i < centroids.size(); i++) {
-                double dist = Utils.ellipticalRelativeDistanceWithLimit1(centroids.get(i), detailedRadii.get(i), p);
-                if (dist <= 1) {
-                    outlier = false;
-                }
-                if (dist < minDist) {
-                    minDist = dist;
-                    bestId = i;
+        //this is the last step of the execution, so the data set is released even if it fails
+        try {
+            int[] clusterAssignment = new int[dataSet.getTotalWeight()];
+            int[] clusterN = new int[centroids.size()];
+            double[][] clusterLS = new double[centroids.size()][dimensionality];
+            double[][] clusterSS = new double[centroids.size()][dimensionality];
+            int nOutliers = 0;
+            int[] p = new int[dimensionality];
+            for (int point = 0; point < dataSet.size(); point++) {
+                dataSet.getPoint(point, p);
+                int weight = dataSet.getWeight(point);
+                int bestId = -1;
+                double minDist = Double.POSITIVE_INFINITY;
+                boolean outlier = true;
+                for (int i = 0; i < centroids.size(); i++) {
+                    double dist = Utils.ellipticalRelativeDistanceWithLimit1(centroids.get(i), detailedRadii.get(i), p);
+                    if (dist <= 1) {
+                        outlier = false;
+                    }
+                    if (dist < minDist) {
+                        minDist = dist;
+                        bestId = i;
+                    }
                 }
-            }
 
-            if (!outlier) {
-                clusterN[bestId]++;
-                for (int i = 0; i < dimensionality; i++) {
-                    clusterLS[bestId][i] += p[i];
-                    clusterSS[bestId][i] += p[i] * p[i];
+                if (!outlier) {
+                    clusterN[bestId] += weight;
+                    for (int i = 0; i < dimensionality; i++) {
+                        clusterLS[bestId][i] += 1.0 * weight * p[i];
+                        clusterSS[bestId][i] += 1.0 * weight * p[i] * p[i];
+                    }
+                } else {
+                    nOutliers += weight;
+                }
+                //the label is written for all the occurrences of the point
+                for (int k = 0; k < weight; k++) {
+                    clusterAssignment[dataSet.getFilePosition(point, k)] = bestId + 1;
                 }
-            } else {
-                nOutliers++;
             }
-            clusterAssignment[point.filePosition] = bestId + 1;
-        }
-        worker.sendMessageToMaster(new FinalRefinementResponse(executionId, clusterN, clusterLS, clusterSS, nOutliers));
-        //now print the labels on file
-        try (PrintWriter out = new PrintWriter(new FileOutputStream(worker.datasetsPath + executionId + "_" + worker.id + ".labels"), true)) {
-            for (int c : clusterAssignment) {
-                out.println(c);
+            worker.sendMessageToMaster(new FinalRefinementResponse(executionId, clusterN, clusterLS, clusterSS, nOutliers));
+            //now print the labels on file
+            try (PrintWriter out = new PrintWriter(new FileOutputStream(worker.datasetsPath + executionId + "_" + worker.id + ".labels"), true)) {
+                for (int c : clusterAssignment) {
+                    out.println(c);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
             }
-        } catch (Exception e) {
-            e.printStackTrace();
+        } finally {
+            worker.finishExecution(this);
         }
     }
 }
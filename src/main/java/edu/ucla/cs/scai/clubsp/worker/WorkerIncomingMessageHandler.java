@@ -15,17 +15,21 @@
  */
 package edu.ucla.cs.scai.clubsp.worker;
 
+import edu.ucla.cs.scai.clubsp.messages.AbortExecutionRequest;
 import edu.ucla.cs.scai.clubsp.messages.ClubsPMessage;
-import edu.ucla.cs.scai.clubsp.messages.ComputeBestSplitRequest;
-import edu.ucla.cs.scai.clubsp.messages.ComputeValleyCriterionRequest;
+import edu.ucla.cs.scai.clubsp.messages.EvaluateBlockRequest;
 import edu.ucla.cs.scai.clubsp.messages.ExecutionMessage;
 import edu.ucla.cs.scai.clubsp.messages.FinalRefinementRequest;
+import edu.ucla.cs.scai.clubsp.messages.FinalizeBlockRequest;
 import edu.ucla.cs.scai.clubsp.messages.GenerateDataSetRequest;
 import edu.ucla.cs.scai.clubsp.messages.InitRootRequest;
 import edu.ucla.cs.scai.clubsp.messages.IntermediateRefinementRequest;
 import edu.ucla.cs.scai.clubsp.messages.LoadDataSetRequest;
+import edu.ucla.cs.scai.clubsp.messages.ReceiveMarginalWindowsRequest;
 import edu.ucla.cs.scai.clubsp.messages.ReceiveMarginalsRequest;
+import edu.ucla.cs.scai.clubsp.messages.ReduceMarginalsRequest;
 import edu.ucla.cs.scai.clubsp.messages.RestrictedCountRequest;
+import edu.ucla.cs.scai.clubsp.messages.SendMarginalWindowsRequest;
 import edu.ucla.cs.scai.clubsp.messages.SendMarginalsRequest;
 import edu.ucla.cs.scai.clubsp.messages.SplitRequest;
 import edu.ucla.cs.scai.clubsp.messages.WorkerConnectionResponse;
@@ -37,65 +41,34 @@ import java.net.Socket;
  *
  * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
  */
-public class WorkerIncomingMessageHandler extends Thread {
+public class WorkerIncomingMessageHandler implements Runnable {
 
     Socket socket;
     Worker worker;
+    ClubsPMessage msg;
 
+    //reads a message, which is then handled by the message pool of the worker
     public WorkerIncomingMessageHandler(Worker worker, Socket socket) {
         this.worker = worker;
         this.socket = socket;
     }
 
+    //handles a message that was already received, and was deferred because it could not be served yet
+    public WorkerIncomingMessageHandler(Worker worker, ClubsPMessage msg) {
+        this.worker = worker;
+        this.msg = msg;
+    }
+
     @Override
     public void run() {
+        if (msg != null) {
+            handle();
+            return;
+        }
         try (ObjectInputStream in = new ObjectInputStream(socket.getInputStream());) {
-            ClubsPMessage msg = (ClubsPMessage) in.readObject();
+            msg = (ClubsPMessage) in.readObject();
             System.out.println("Received message " + msg);
-            if (msg instanceof WorkerConnectionResponse) {
-                WorkerConnectionResponse res = (WorkerConnectionResponse) msg;
-                worker.initId(res.assignedId, res.e);
-            } else if (msg instanceof GenerateDataSetRequest) {
-                GenerateDataSetRequest c = (GenerateDataSetRequest) msg;
-                worker.doGeneration(c.nOfTuples, c.domainWidth, c.noiseRatio, c.centers, c.radii);
-            } else if (msg instanceof LoadDataSetRequest) {
-                LoadDataSetRequest c = (LoadDataSetRequest) msg;
-                worker.initExecution(c.executionId, c.dataSetId, c.workers, c.scaleFactor);
-            } else if (msg instanceof ExecutionMessage) {
-                WorkerExecution ex = worker.workerExecutions.get(((ExecutionMessage) msg).executionId);
-                if (msg instanceof InitRootRequest) {
-                    InitRootRequest c = (InitRootRequest) msg;
-                    ex.initRoot(c.globalDomain);
-                } else if (msg instanceof SendMarginalsRequest) {
-                    SendMarginalsRequest c = (SendMarginalsRequest) msg;
-                    ex.sendMarginals(c.blockId, c.dimension, c.receiverId);
-                } else if (msg instanceof ReceiveMarginalsRequest) {
-                    ReceiveMarginalsRequest c = (ReceiveMarginalsRequest) msg;
-                    ex.receiveMarginals(c.blockId, c.dimension, c.marginals);
-                } else if (msg instanceof ComputeBestSplitRequest) {
-                    ComputeBestSplitRequest c = (ComputeBestSplitRequest) msg;
-                    ex.computeBestSplit(c.blockId, c.dimension, c.globalN, c.globalLS, c.globalSS);
-                } else if (msg instanceof SplitRequest) {
-                    SplitRequest c = (SplitRequest) msg;
-                    ex.doSplit(c.blockId, c.splitDimension, c.splitPosition, c.leftId, c.rightId, c.globalN, c.globalLS, c.globalSS);
-                } else if (msg instanceof ComputeValleyCriterionRequest) {
-                    ComputeValleyCriterionRequest c = (ComputeValleyCriterionRequest) msg;
-                    ex.computeValleyCriterion(c.blockId, c.dimension, c.delta);
-                } else if (msg instanceof RestrictedCountRequest) {
-                    RestrictedCountRequest c = (RestrictedCountRequest) msg;
-                    ex.computeRestrictedCount(c.blockIds, c.restrictedRanges);
-                } else if (msg instanceof IntermediateRefinementRequest) {
-                    IntermediateRefinementRequest c = (IntermediateRefinementRequest) msg;
-                    ex.doIntermediateRefinement(c.clusterBlockIds, c.centroids, c.detailedRadii);
-                } else if (msg instanceof FinalRefinementRequest) {
-                    FinalRefinementRequest c = (FinalRefinementRequest) msg;
-                    ex.doFinalRefinement(c.centroids, c.detailedRadii);
-                } else {
-                    System.out.println("Unrecognized message type");
-                }
-            } else {
-                System.out.println("Unrecognized message type");
-            }
+            worker.submitMessage(msg);
         } catch (ClassNotFoundException | IOException e) {
             System.out.println(e);
         } finally {
@@ -107,4 +80,66 @@ public class WorkerIncomingMessageHandler extends Thread {
         }
     }
 
+    //the messages that cannot be served yet are deferred, so that the threads of the pool are never blocked waiting for other messages
+    private void handle() {
+        if (msg instanceof WorkerConnectionResponse) {
+            WorkerConnectionResponse res = (WorkerConnectionResponse) msg;
+            worker.initId(res.assignedId, res.e);
+        } else if (msg instanceof GenerateDataSetRequest) {
+            GenerateDataSetRequest c = (GenerateDataSetRequest) msg;
+            worker.doGeneration(c.nOfTuples, c.domainWidth, c.noiseRatio, c.centers, c.radii);
+        } else if (msg instanceof LoadDataSetRequest) {
+            LoadDataSetRequest c = (LoadDataSetRequest) msg;
+            worker.initExecution(c.executionId, c.dataSetId, c.workers, c.workerIds, c.scaleFactor, c.options, c.globalDomain);
+        } else if (msg instanceof AbortExecutionRequest) {
+            worker.abortExecution(((AbortExecutionRequest) msg).executionId);
+        } else if (msg instanceof ExecutionMessage) {
+            WorkerExecution ex = worker.getExecutionOrDefer((ExecutionMessage) msg);
+            if (ex == null || !(msg instanceof InitRootRequest) && ex.deferUntilRootInitialized((ExecutionMessage) msg)) {
+                return;
+            }
+            if (msg instanceof InitRootRequest) {
+                InitRootRequest c = (InitRootRequest) msg;
+                ex.initRoot(c.globalDomain, c.globalDictionary);
+            } else if (msg instanceof SendMarginalsRequest) {
+                SendMarginalsRequest c = (SendMarginalsRequest) msg;
+                ex.sendMarginals(c.blockIds, c.dimension, c.receiverId);
+            } else if (msg instanceof ReceiveMarginalsRequest) {
+                ReceiveMarginalsRequest c = (ReceiveMarginalsRequest) msg;
+                ex.receiveMarginals(c.blockIds, c.dimension, c.marginals);
+            } else if (msg instanceof SendMarginalWindowsRequest) {
+                SendMarginalWindowsRequest c = (SendMarginalWindowsRequest) msg;
+                ex.sendMarginalWindows(c.blockId, c.dimension, c.begin, c.end, c.receiverId);
+            } else if (msg instanceof ReceiveMarginalWindowsRequest) {
+                ReceiveMarginalWindowsRequest c = (ReceiveMarginalWindowsRequest) msg;
+                ex.receiveMarginalWindows(c.blockId, c.dimension, c.windows);
+            } else if (msg instanceof ReduceMarginalsRequest) {
+                ReduceMarginalsRequest c = (ReduceMarginalsRequest) msg;
+                ex.reduceMarginals(c.blockId, c.dimension, c.marginals);
+            } else if (msg instanceof EvaluateBlockRequest) {
+                EvaluateBlockRequest c = (EvaluateBlockRequest) msg;
+                ex.evaluateBlocks(c.blockIds, c.dimensions, c.globalN, c.globalLS, c.globalSS, c.delta);
+            } else if (msg instanceof SplitRequest) {
+                SplitRequest c = (SplitRequest) msg;
+                ex.doSplit(c.blockIds, c.splitDimensions, c.splitPositions, c.leftIds, c.rightIds, c.globalN, c.globalLS, c.globalSS);
+            } else if (msg instanceof FinalizeBlockRequest) {
+                FinalizeBlockRequest c = (FinalizeBlockRequest) msg;
+                ex.finalizeBlocks(c.blockIds);
+            } else if (msg instanceof RestrictedCountRequest) {
+                RestrictedCountRequest c = (RestrictedCountRequest) msg;
+                ex.computeRestrictedCount(c.blockIds, c.restrictedRanges);
+            } else if (msg instanceof IntermediateRefinementRequest) {
+                IntermediateRefinementRequest c = (IntermediateRefinementRequest) msg;
+                ex.doIntermediateRefinement(c.clusterBlockIds, c.centroids, c.detailedRadii);
+            } else if (msg instanceof FinalRefinementRequest) {
+                FinalRefinementRequest c = (FinalRefinementRequest) msg;
+                ex.doFinalRefinement(c.centroids, c.detailedRadii);
+            } else {
+                System.out.println("Unrecognized message type");
+            }
+        } else {
+            System.out.println("Unrecognized message type");
+        }
+    }
+
 }
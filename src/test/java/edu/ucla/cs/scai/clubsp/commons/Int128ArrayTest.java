@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import java.math.BigInteger;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class Int128ArrayTest {
+
+    private static final BigInteger TWO_TO_64 = BigInteger.ONE.shiftLeft(64);
+
+    //the exact value of the i-th element, as a signed 128-bit integer
+    private static BigInteger value(Int128Array a, int i) {
+        BigInteger lo = BigInteger.valueOf(a.lo[i]);
+        if (lo.signum() < 0) {
+            lo = lo.add(TWO_TO_64);
+        }
+        return BigInteger.valueOf(a.hi[i]).shiftLeft(64).add(lo);
+    }
+
+    private static void assertValues(BigInteger[] expected, Int128Array a) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], value(a, i));
+            assertEquals(expected[i].doubleValue(), a.doubleValue(i), Math.abs(expected[i].doubleValue()) * 1e-15);
+        }
+    }
+
+    @Test
+    public void addAndSubCarryBetweenTheWords() {
+        Int128Array a = new Int128Array(1);
+        a.add(0, -1L);
+        assertEquals(BigInteger.valueOf(-1), value(a, 0));
+        a.add(0, 0, -1L); //adds 2^64 - 1
+        assertEquals(TWO_TO_64.subtract(BigInteger.valueOf(2)), value(a, 0));
+        a.add(0, 2);
+        assertEquals(TWO_TO_64, value(a, 0));
+        a.sub(0, 0, 1);
+        assertEquals(TWO_TO_64.subtract(BigInteger.ONE), value(a, 0));
+        a.sub(0, 0, -1L);
+        assertEquals(BigInteger.ZERO, value(a, 0));
+        a.sub(0, 0, 1);
+        assertEquals(BigInteger.valueOf(-1), value(a, 0));
+        assertEquals(-1.0, a.doubleValue(0), 0);
+    }
+
+    @Test
+    public void addProductIsExact() {
+        Int128Array a = new Int128Array(1);
+        a.addProduct(0, Long.MAX_VALUE, Long.MAX_VALUE);
+        BigInteger max = BigInteger.valueOf(Long.MAX_VALUE);
+        assertEquals(max.multiply(max), value(a, 0));
+        a.addProduct(0, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(max.multiply(max).shiftLeft(1), value(a, 0));
+    }
+
+    @Test
+    public void randomOperationsMatchBigInteger() {
+        Random random = new Random(1);
+        int length = 8;
+        Int128Array a = new Int128Array(length);
+        Int128Array b = new Int128Array(length);
+        BigInteger[] expectedA = new BigInteger[length];
+        BigInteger[] expectedB = new BigInteger[length];
+        for (int i = 0; i < length; i++) {
+            expectedA[i] = BigInteger.ZERO;
+            expectedB[i] = BigInteger.ZERO;
+        }
+        for (int step = 0; step < 100000; step++) {
+            int i = random.nextInt(length);
+            long v = random.nextLong();
+            switch (random.nextInt(4)) {
+                case 0:
+                    a.add(i, v);
+                    expectedA[i] = expectedA[i].add(BigInteger.valueOf(v));
+                    break;
+                case 1:
+                    //the sum of the products must fit in 127 bits
+                    long x = random.nextLong() >>> 8;
+                    long y = random.nextLong() >>> 8;
+                    a.addProduct(i, x, y);
+                    expectedA[i] = expectedA[i].add(BigInteger.valueOf(x).multiply(BigInteger.valueOf(y)));
+                    break;
+                case 2:
+                    b.add(i, v);
+                    expectedB[i] = expectedB[i].add(BigInteger.valueOf(v));
+                    break;
+                default:
+                    a.sub(i, v >> 63, v);
+                    expectedA[i] = expectedA[i].subtract(BigInteger.valueOf(v));
+            }
+        }
+        assertValues(expectedA, a);
+        Int128Array c = a.getCopy();
+        c.add(b);
+        for (int i = 0; i < length; i++) {
+            expectedA[i] = expectedA[i].add(expectedB[i]);
+        }
+        assertValues(expectedA, c);
+        c.sub(b);
+        c.sub(b);
+        for (int i = 0; i < length; i++) {
+            expectedA[i] = expectedA[i].subtract(expectedB[i]).subtract(expectedB[i]);
+        }
+        assertValues(expectedA, c);
+        Int128Array range = c.copyOfRange(2, 5);
+        assertEquals(3, range.length());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expectedA[i + 2], value(range, i));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class IntIntMapTest {
+
+    @Test
+    public void missingKeysHaveTheDefaultValue() {
+        IntIntMap map = new IntIntMap(-1);
+        assertEquals(-1, map.get(-5));
+        assertEquals(-1, map.get(3));
+        map.put(3, 7);
+        assertEquals(7, map.get(3));
+        //the slots added by the growth of the array have the default value
+        map.put(100, 1);
+        for (int key = 0; key < 200; key++) {
+            assertEquals(key == 3 ? 7 : key == 100 ? 1 : -1, map.get(key));
+        }
+        IntIntMap counters = new IntIntMap(0);
+        assertEquals(1, counters.increment(40));
+        assertEquals(2, counters.increment(40));
+        assertEquals(-3, counters.increment(41, -3));
+        assertEquals(0, counters.get(39));
+        try {
+            counters.put(-1, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
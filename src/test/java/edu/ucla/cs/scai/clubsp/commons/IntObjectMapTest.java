@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeMap;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class IntObjectMapTest {
+
+    @Test
+    public void randomOperationsMatchATreeMap() {
+        Random random = new Random(1);
+        IntObjectMap<String> map = new IntObjectMap<>(4);
+        TreeMap<Integer, String> expected = new TreeMap<>();
+        for (int step = 0; step < 20000; step++) {
+            int key = random.nextInt(step < 10000 ? 100 : 5000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                default:
+                    String value = "v" + step;
+                    assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+        assertEquals(new ArrayList<>(expected.values()), map.values());
+    }
+
+    @Test
+    public void missingAndNullValues() {
+        IntObjectMap<String> map = new IntObjectMap<>(1);
+        assertTrue(map.isEmpty());
+        assertNull(map.get(-1));
+        assertNull(map.get(1000));
+        assertNull(map.remove(1000));
+        //null values are not stored
+        assertNull(map.put(1000, null));
+        assertTrue(map.isEmpty());
+        map.put(1000, "a");
+        assertEquals("a", map.put(1000, null));
+        assertFalse(map.containsKey(1000));
+        assertEquals(0, map.size());
+        try {
+            map.put(-1, "a");
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
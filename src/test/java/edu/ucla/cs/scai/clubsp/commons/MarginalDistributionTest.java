@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.commons;
+
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class MarginalDistributionTest {
+
+    static final int WIDTH = 1000;
+    static final int DIMENSIONALITY = 3;
+
+    //points in [0, WIDTH-1]^DIMENSIONALITY, whose first coordinate is in [from, to)
+    private static int[][] randomPoints(Random random, int n, int from, int to) {
+        int[][] res = new int[n][DIMENSIONALITY];
+        for (int[] p : res) {
+            p[0] = from + random.nextInt(to - from);
+            for (int k = 1; k < DIMENSIONALITY; k++) {
+                p[k] = random.nextInt(WIDTH);
+            }
+        }
+        return res;
+    }
+
+    //the marginals of the points on the first dimension, in the given form
+    private static MarginalDistributionWithSquares marginals(int[][] points, boolean sparse) {
+        MarginalDistributionWithSquares res = new MarginalDistributionWithSquares(WIDTH, DIMENSIONALITY);
+        for (int[] p : points) {
+            res.add(p, p[0]);
+        }
+        if (sparse) {
+            res.toSparse();
+        }
+        return res;
+    }
+
+    private static int[][] concat(int[][] a, int[][] b) {
+        int[][] res = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, res, a.length, b.length);
+        return res;
+    }
+
+    //compares the content of every bin, independently of the form of the two marginals
+    static void assertSameContent(MarginalDistribution expected, MarginalDistribution actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        for (int b = 0; b < expected.getWidth(); b++) {
+            int e1 = expected.getEntry(b);
+            int e2 = actual.getEntry(b);
+            assertEquals("count of bin " + b, e1 < 0 ? 0 : expected.count[e1], e2 < 0 ? 0 : actual.count[e2]);
+            for (int k = 0; k < DIMENSIONALITY; k++) {
+                assertEquals("sum of bin " + b, e1 < 0 ? 0 : expected.sum[e1 * DIMENSIONALITY + k], e2 < 0 ? 0 : actual.sum[e2 * DIMENSIONALITY + k]);
+                if (expected instanceof MarginalDistributionWithSquares && actual instanceof MarginalDistributionWithSquares) {
+                    Int128Array s1 = ((MarginalDistributionWithSquares) expected).sumSqr;
+                    Int128Array s2 = ((MarginalDistributionWithSquares) actual).sumSqr;
+                    assertEquals("squares of bin " + b, e1 < 0 ? 0 : s1.lo[e1 * DIMENSIONALITY + k], e2 < 0 ? 0 : s2.lo[e2 * DIMENSIONALITY + k]);
+                    assertEquals("squares of bin " + b, e1 < 0 ? 0 : s1.hi[e1 * DIMENSIONALITY + k], e2 < 0 ? 0 : s2.hi[e2 * DIMENSIONALITY + k]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void addInEveryCombinationOfForms() {
+        Random random = new Random(1);
+        //the second set of points overlaps only partially the first one
+        int[][] a = randomPoints(random, 50, 0, 600);
+        int[][] b = randomPoints(random, 60, 400, 1000);
+        MarginalDistributionWithSquares expected = marginals(concat(a, b), false);
+        for (boolean sparseA : new boolean[]{false, true}) {
+            for (boolean sparseB : new boolean[]{false, true}) {
+                MarginalDistributionWithSquares m = marginals(a, sparseA);
+                m.add(marginals(b, sparseB));
+                assertSameContent(expected, m);
+            }
+        }
+    }
+
+    @Test
+    public void subInEveryCombinationOfForms() {
+        Random random = new Random(2);
+        int[][] a = randomPoints(random, 80, 0, 1000);
+        int[][] b = randomPoints(random, 40, 0, 1000);
+        MarginalDistributionWithSquares expected = marginals(a, false);
+        for (boolean sparseAll : new boolean[]{false, true}) {
+            for (boolean sparseB : new boolean[]{false, true}) {
+                MarginalDistributionWithSquares m = marginals(concat(a, b), sparseAll);
+                m.sub(marginals(b, sparseB));
+                assertSameContent(expected, m);
+                if (m.isSparse()) {
+                    //the bins left empty are removed
+                    for (int e = 0; e < m.getNumberOfEntries(); e++) {
+                        assertTrue(m.count[e] > 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void subOfAnUnoccupiedBinFromASparseMarginalFails() {
+        MarginalDistributionWithSquares m = marginals(new int[][]{{1, 0, 0}}, true);
+        try {
+            m.sub(marginals(new int[][]{{2, 0, 0}}, true));
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void normalizeChoosesTheFormByOccupancy() {
+        Random random = new Random(3);
+        MarginalDistributionWithSquares few = marginals(randomPoints(random, 10, 0, 1000), false);
+        MarginalDistributionWithSquares expectedFew = few.getCopy();
+        few.normalize();
+        assertTrue(few.isSparse());
+        assertSameContent(expectedFew, few);
+        MarginalDistributionWithSquares many = marginals(randomPoints(random, 5000, 0, 1000), true);
+        MarginalDistributionWithSquares expectedMany = many.getCopy();
+        many.normalize();
+        assertFalse(many.isSparse());
+        assertSameContent(expectedMany, many);
+    }
+
+    @Test
+    public void copyOfARange() {
+        Random random = new Random(4);
+        int[][] points = randomPoints(random, 300, 0, 1000);
+        for (boolean sparse : new boolean[]{false, true}) {
+            MarginalDistributionWithSquares m = marginals(points, sparse);
+            MarginalDistributionWithSquares copy = m.getCopy(250, 749);
+            MarginalDistribution simpleCopy = m.getSimpleCopy(250, 749);
+            assertEquals(MarginalDistribution.class, simpleCopy.getClass());
+            assertEquals(500, copy.getWidth());
+            for (int b = 0; b < 500; b++) {
+                int e = m.getEntry(b + 250);
+                int c = copy.getEntry(b);
+                int s = simpleCopy.getEntry(b);
+                assertEquals(e < 0 ? 0 : m.count[e], c < 0 ? 0 : copy.count[c]);
+                assertEquals(e < 0 ? 0 : m.count[e], s < 0 ? 0 : simpleCopy.count[s]);
+                for (int k = 0; k < DIMENSIONALITY; k++) {
+                    assertEquals(e < 0 ? 0 : m.sum[e * DIMENSIONALITY + k], c < 0 ? 0 : copy.sum[c * DIMENSIONALITY + k]);
+                    assertEquals(e < 0 ? 0 : m.sumSqr.lo[e * DIMENSIONALITY + k], c < 0 ? 0 : copy.sumSqr.lo[c * DIMENSIONALITY + k]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void coarsenedMarginalsMergeConsecutiveBins() {
+        Random random = new Random(5);
+        int[][] points = randomPoints(random, 100, 0, 1000);
+        int shift = 3;
+        MarginalDistribution expected = new MarginalDistribution(((WIDTH - 1) >> shift) + 1, DIMENSIONALITY);
+        for (int[] p : points) {
+            expected.add(p, p[0] >> shift);
+        }
+        for (boolean sparse : new boolean[]{false, true}) {
+            MarginalDistribution coarse = marginals(points, sparse).getCoarsened(shift);
+            assertEquals(expected.getWidth(), coarse.getWidth());
+            for (int b = 0; b < expected.getWidth(); b++) {
+                int e = coarse.getEntry(b);
+                assertEquals(expected.count[b], e < 0 ? 0 : coarse.count[e]);
+                for (int k = 0; k < DIMENSIONALITY; k++) {
+                    assertEquals(expected.sum[b * DIMENSIONALITY + k], e < 0 ? 0 : coarse.sum[e * DIMENSIONALITY + k]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void totalsOfTheMarginals() {
+        int[][] points = {{3, 1, 2}, {3, 4, 5}, {7, 10, 20}};
+        MarginalDistribution m = marginals(points, true);
+        m.add(new int[]{7, 1, 1}, m.getEntry(7), 4);
+        assertEquals(7, m.getTotalCount());
+        assertEquals(3 + 3 + 7 + 28, m.getTotalSum()[0]);
+        assertEquals(1 + 4 + 10 + 4, m.getTotalSum()[1]);
+        assertEquals(2 + 5 + 20 + 4, m.getTotalSum()[2]);
+    }
+
+    @Test
+    public void theSizeOfTooLargeMarginalsIsRejected() {
+        try {
+            new MarginalDistribution(Integer.MAX_VALUE / 2, 3);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            //the width of a domain that overflowed an int
+            new MarginalDistributionWithSquares(Integer.MIN_VALUE + 5, 1);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.master;
+
+import edu.ucla.cs.scai.clubsp.commons.ExecutionOptions;
+import edu.ucla.cs.scai.clubsp.worker.Worker;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs a master and two workers in this JVM, on local ports, and checks
+ * that the labels of the points do not depend on the options that change
+ * the order in which the blocks are evaluated (parallelBlocks,
+ * speculativeEvaluation, levelSynchronous).
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class ClusteringEndToEndTest {
+
+    static final String DATA_SET = "ds.data";
+    static final int WORKERS = 2;
+    static final int POINTS_PER_WORKER = 15000;
+    static final long TIMEOUT = 120000;
+
+    static File root;
+    static File[] workerDirs;
+    static Master master;
+
+    @BeforeClass
+    public static void startMasterAndWorkers() throws Exception {
+        root = Files.createTempDirectory("clubsp").toFile();
+        workerDirs = new File[WORKERS];
+        Random random = new Random(7);
+        int[][] centers = new int[5][3];
+        for (int[] c : centers) {
+            for (int k = 0; k < c.length; k++) {
+                c[k] = 100 + random.nextInt(800);
+            }
+        }
+        for (int w = 0; w < WORKERS; w++) {
+            workerDirs[w] = new File(root, "w" + w);
+            workerDirs[w].mkdir();
+            try (PrintWriter out = new PrintWriter(new File(workerDirs[w], DATA_SET))) {
+                for (int i = 0; i < POINTS_PER_WORKER; i++) {
+                    int[] c = centers[random.nextInt(centers.length)];
+                    boolean noise = random.nextDouble() < 0.05;
+                    StringBuilder line = new StringBuilder();
+                    for (int k = 0; k < c.length; k++) {
+                        int v = noise ? random.nextInt(1000) : (int) Math.max(0, Math.min(999, Math.round(c[k] + 30 * random.nextGaussian())));
+                        line.append(k > 0 ? "," : "").append(v);
+                    }
+                    out.println(line);
+                }
+            }
+        }
+        final int masterPort = getFreePort();
+        master = new Master(masterPort);
+        startDaemon(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    master.start();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        for (int w = 0; w < WORKERS; w++) {
+            final Worker worker = new Worker(getFreePort(), workerDirs[w].getAbsolutePath() + File.separator, "localhost", masterPort);
+            //the workers are registered one at a time, so that the id of a worker does not depend on the timing
+            final int registered = w;
+            startDaemon(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        worker.start();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            while (getRegisteredWorkers() == registered) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("The worker did not register");
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    @AfterClass
+    public static void deleteFiles() {
+        for (File dir : workerDirs) {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+        root.delete();
+    }
+
+    private static int getFreePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static void startDaemon(Runnable r) {
+        Thread t = new Thread(r);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static int getRegisteredWorkers() {
+        synchronized (master) {
+            return master.registeredWorkers.size();
+        }
+    }
+
+    //runs a clustering with the given options, and returns the labels written by every worker
+    private static String[] cluster(String... options) throws Exception {
+        ExecutionOptions executionOptions = new ExecutionOptions();
+        for (String option : options) {
+            String[] nameValue = option.split("=", 2);
+            executionOptions.setOption(nameValue[0], nameValue.length > 1 ? nameValue[1] : "true");
+        }
+        master.initExecution(DATA_SET, 1, executionOptions);
+        String[] res = new String[WORKERS];
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        for (int w = 0; w < WORKERS; w++) {
+            //the labels file is complete when it has a line for every point
+            while (res[w] == null) {
+                for (File f : workerDirs[w].listFiles()) {
+                    if (f.getName().endsWith(".labels")) {
+                        List<String> lines = Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+                        if (lines.size() == POINTS_PER_WORKER) {
+                            res[w] = lines.toString();
+                            f.delete();
+                        }
+                    }
+                }
+                if (res[w] == null) {
+                    if (System.currentTimeMillis() > deadline) {
+                        fail("The clustering with options " + executionOptions + " did not finish");
+                    }
+                    Thread.sleep(100);
+                }
+            }
+        }
+        return res;
+    }
+
+    //the labels as an array, one for every point
+    private static String[] toArray(String labels) {
+        return labels.substring(1, labels.length() - 1).split(", ");
+    }
+
+    //checks that the two labelings define the same clusters, possibly with different numbers
+    private static void assertSamePartition(String message, String expected, String actual) {
+        String[] e = toArray(expected);
+        String[] a = toArray(actual);
+        assertEquals(message, e.length, a.length);
+        HashMap<String, String> renumbering = new HashMap<>();
+        HashMap<String, String> inverse = new HashMap<>();
+        for (int i = 0; i < e.length; i++) {
+            String old = renumbering.put(e[i], a[i]);
+            assertTrue(message + ", point " + i, old == null || old.equals(a[i]));
+            old = inverse.put(a[i], e[i]);
+            assertTrue(message + ", point " + i, old == null || old.equals(e[i]));
+        }
+    }
+
+    private static void assertSameLabels(String[] expected, String[] options) throws Exception {
+        String[] labels = cluster(options);
+        for (int w = 0; w < WORKERS; w++) {
+            assertEquals("labels of worker " + w + " with " + Arrays.toString(options), expected[w], labels[w]);
+        }
+    }
+
+    //the decisions are taken in the order of the sequential execution, whatever the number of blocks evaluated
+    //at the same time, and the speculative evaluations are used only if the global statistics are the same
+    @Test
+    public void labelsDoNotDependOnTheEvaluationOrder() throws Exception {
+        String[] expected = cluster();
+        for (String labels : expected) {
+            //the points are not all in one cluster
+            assertTrue(labels.contains("2"));
+        }
+        assertSameLabels(expected, new String[]{"parallelBlocks=8"});
+        assertSameLabels(expected, new String[]{"speculativeEvaluation"});
+        assertSameLabels(expected, new String[]{"parallelBlocks=8", "speculativeEvaluation"});
+    }
+
+    //the rounds of the level-synchronous execution can take different decisions, although not on this data set,
+    //and the ids of the blocks are assigned in a different order, so the clusters can be numbered differently
+    @Test
+    public void levelSynchronousExecutionFindsTheSameClusters() throws Exception {
+        String[] expected = cluster();
+        String[] levelSynchronous = cluster("levelSynchronous");
+        for (int w = 0; w < WORKERS; w++) {
+            assertSamePartition("clusters of worker " + w, expected[w], levelSynchronous[w]);
+        }
+        assertSameLabels(levelSynchronous, new String[]{"levelSynchronous", "speculativeEvaluation"});
+        assertSameLabels(levelSynchronous, new String[]{"levelSynchronous", "parallelBlocks=8", "speculativeEvaluation"});
+    }
+}
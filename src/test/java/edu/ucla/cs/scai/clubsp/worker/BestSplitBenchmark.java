@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.BestSplitResult;
+import java.util.Random;
+
+/**
+ * Compares the time of the best split scan with the one of the original
+ * scan, on the same global marginals. It is not run with the tests:
+ * java -cp target/classes:target/test-classes edu.ucla.cs.scai.clubsp.worker.BestSplitBenchmark [points] [width] [dimensionality...]
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class BestSplitBenchmark {
+
+    static final int WARMUP_ROUNDS = 20;
+    static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int[] dimensionalities = {4, 16, 32};
+        if (args.length > 2) {
+            dimensionalities = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                dimensionalities[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int dimensionality : dimensionalities) {
+            WorkerClusterBlock root = ReferenceBestSplit.createRoot(new Random(dimensionality), n, dimensionality, width, 8);
+            for (int d = 0; d < dimensionality; d++) {
+                //the global marginals are built before the measure
+                root.getGlobalMarginals(d);
+            }
+            for (int r = 0; r < WARMUP_ROUNDS; r++) {
+                runReference(root);
+                runCurrent(root);
+            }
+            long reference = 0, current = 0;
+            double check = 0;
+            for (int r = 0; r < ROUNDS; r++) {
+                long start = System.nanoTime();
+                check += runReference(root);
+                reference += System.nanoTime() - start;
+                start = System.nanoTime();
+                check -= runCurrent(root);
+                current += System.nanoTime() - start;
+            }
+            System.out.printf("d=%d: original %.3f ms, current %.3f ms, speedup %.2f%s%n", dimensionality,
+                    reference / 1e6 / ROUNDS, current / 1e6 / ROUNDS, 1.0 * reference / current, check == 0 ? "" : " (DIFFERENT RESULTS)");
+        }
+    }
+
+    static double runReference(WorkerClusterBlock block) {
+        double res = 0;
+        for (int d = 0; d < block.dimensionality; d++) {
+            BestSplitResult split = ReferenceBestSplit.computeBestSplit(block.getGlobalMarginals(d), block.globalN, block.globalLS, block.getR().inf[d]);
+            res += split.getDeltaSSQ() + split.getPosition();
+        }
+        return res;
+    }
+
+    static double runCurrent(WorkerClusterBlock block) {
+        double res = 0;
+        for (int d = 0; d < block.dimensionality; d++) {
+            BestSplitResult split = block.computeBestSplit(d);
+            res += split.getDeltaSSQ() + split.getPosition();
+        }
+        return res;
+    }
+}
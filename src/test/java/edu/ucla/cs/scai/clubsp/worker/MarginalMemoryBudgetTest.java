@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistributionWithSquares;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class MarginalMemoryBudgetTest {
+
+    //a block with dense marginals of the same size on every dimension
+    private static WorkerClusterBlock createBlock(long seed) {
+        return ReferenceBestSplit.createRoot(new Random(seed), 5000, 3, 100, 4);
+    }
+
+    //waits for the evictor thread to drop the evicted marginals
+    private static void awaitEvictions(MarginalMemoryBudget budget) throws InterruptedException {
+        while (true) {
+            synchronized (budget) {
+                if (!budget.evicting) {
+                    return;
+                }
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void theLeastRecentlyUsedMarginalsAreEvicted() throws InterruptedException {
+        WorkerClusterBlock block = createBlock(1);
+        WorkerClusterBlock other = createBlock(2);
+        long size = createBlock(1).getLocalMarginals(0).getSizeInBytes();
+        MarginalMemoryBudget budget = new MarginalMemoryBudget(3 * size);
+        block.setMarginalMemoryBudget(budget);
+        other.setMarginalMemoryBudget(budget);
+        for (int d = 0; d < 3; d++) {
+            assertFalse(block.getLocalMarginals(d).isSparse());
+        }
+        assertEquals(3 * size, budget.getUsedBytes());
+        //the marginals on dimension 0 become the most recently used ones, so those on dimension 1 are evicted
+        MarginalDistributionWithSquares m0 = block.getLocalMarginals(0);
+        assertEquals(size, other.getLocalMarginals(0).getSizeInBytes());
+        awaitEvictions(budget);
+        assertEquals(3, budget.size());
+        assertEquals(3 * size, budget.getUsedBytes());
+        assertSame(m0, block.localMarginals[0]);
+        assertNull(block.localMarginals[1]);
+        assertNotNull(block.localMarginals[2]);
+        assertNotNull(other.localMarginals[0]);
+        //the evicted marginals are rebuilt when they are requested again, and the next least recently used ones are evicted
+        block.getLocalMarginals(1);
+        awaitEvictions(budget);
+        assertNotNull(block.localMarginals[1]);
+        assertNull(block.localMarginals[2]);
+        assertEquals(3 * size, budget.getUsedBytes());
+    }
+
+    @Test
+    public void rebuiltMarginalsAreNotDroppedByAnOldEviction() {
+        WorkerClusterBlock block = createBlock(3);
+        MarginalMemoryBudget budget = new MarginalMemoryBudget(0);
+        block.setMarginalMemoryBudget(budget);
+        MarginalDistributionWithSquares current = block.getLocalMarginals(0);
+        MarginalDistributionWithSquares old = current.getCopy();
+        block.dropEvictedLocalMarginals(0, old);
+        assertSame(current, block.localMarginals[0]);
+        //the removal of marginals that are not the registered ones is ignored
+        budget.remove(block, 0, old);
+        assertEquals(1, budget.size());
+        assertEquals(current.getSizeInBytes(), budget.getUsedBytes());
+        budget.remove(block, 0, current);
+        assertEquals(0, budget.size());
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    public void anUnlimitedBudgetNeverEvicts() throws InterruptedException {
+        WorkerClusterBlock block = createBlock(4);
+        MarginalMemoryBudget budget = new MarginalMemoryBudget(0);
+        block.setMarginalMemoryBudget(budget);
+        long used = 0;
+        for (int d = 0; d < 3; d++) {
+            used += block.getLocalMarginals(d).getSizeInBytes();
+        }
+        awaitEvictions(budget);
+        assertEquals(3, budget.size());
+        assertEquals(used, budget.getUsedBytes());
+        for (int d = 0; d < 3; d++) {
+            assertNotNull(block.localMarginals[d]);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.BestSplitResult;
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistribution;
+import edu.ucla.cs.scai.clubsp.commons.Range;
+import java.util.Random;
+
+/**
+ * The scan of the best split as it was before the inner loops were
+ * restructured, used as a reference by the tests and by the benchmark.
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+class ReferenceBestSplit {
+
+    //the original scan, reading the marginals through the fields and using Math.pow
+    static BestSplitResult computeBestSplit(MarginalDistribution marginals, int globalN, double[] globalLS, int offset) {
+        int dimensionality = globalLS.length;
+        double maxDeltaSSQ = 0;
+        int bestPosition = -1;
+        double[] leftLS = new double[dimensionality];
+        double[] rightLS = new double[dimensionality];
+        int nLeft = 0;
+        int nRight = globalN;
+        System.arraycopy(globalLS, 0, rightLS, 0, dimensionality);
+        int width = marginals.getWidth();
+        for (int e = 0; e < marginals.getNumberOfEntries(); e++) {
+            int pos = marginals.getBin(e);
+            if (pos >= width - 1) {
+                break;
+            }
+            if (marginals.count[e] == 0) {
+                continue;
+            }
+            nLeft += marginals.count[e];
+            nRight -= marginals.count[e];
+            if (nRight == 0) {
+                break;
+            }
+            int o = e * dimensionality;
+            for (int k = 0; k < dimensionality; k++) {
+                leftLS[k] += marginals.sum[o + k];
+                rightLS[k] -= marginals.sum[o + k];
+            }
+            double deltaSSQ = 0;
+            for (int k = 0; k < dimensionality; k++) {
+                deltaSSQ += Math.pow(leftLS[k] / nLeft - rightLS[k] / nRight, 2);
+            }
+            deltaSSQ *= (1.0 * Math.max(nLeft, nRight) / globalN) * Math.min(nLeft, nRight);
+            if (deltaSSQ > maxDeltaSSQ) {
+                maxDeltaSSQ = deltaSSQ;
+                bestPosition = offset + pos;
+            }
+        }
+        return new BestSplitResult(bestPosition, maxDeltaSSQ);
+    }
+
+    //a root block with n points in [0, width-1]^dimensionality, grouped in a few gaussian clusters
+    //the global statistics are set to the local ones, as with a single worker
+    static WorkerClusterBlock createRoot(Random random, int n, int dimensionality, int width, int clusters) {
+        double[][] centers = new double[clusters][dimensionality];
+        for (double[] c : centers) {
+            for (int k = 0; k < dimensionality; k++) {
+                c[k] = random.nextDouble() * width;
+            }
+        }
+        int[][] columns = new int[dimensionality][n];
+        int[] filePositions = new int[n];
+        for (int i = 0; i < n; i++) {
+            double[] c = centers[random.nextInt(clusters)];
+            for (int k = 0; k < dimensionality; k++) {
+                long v = Math.round(c[k] + random.nextGaussian() * width / 20);
+                columns[k][i] = (int) Math.max(0, Math.min(width - 1, v));
+            }
+            filePositions[i] = i;
+        }
+        int[] inf = new int[dimensionality];
+        int[] sup = new int[dimensionality];
+        for (int k = 0; k < dimensionality; k++) {
+            sup[k] = width - 1;
+        }
+        WorkerClusterBlock root = WorkerClusterBlock.initRoot(new HeapPointStore(columns, filePositions), new Range(inf, sup), 0);
+        double[] globalLS = new double[dimensionality];
+        for (int k = 0; k < dimensionality; k++) {
+            globalLS[k] = root.getLocalLS()[k];
+        }
+        root.setGlobalStatistics(root.getLocalN(), globalLS, new double[dimensionality]);
+        return root;
+    }
+}
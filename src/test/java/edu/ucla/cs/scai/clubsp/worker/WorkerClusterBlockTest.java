@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 ScAi, CSD, UCLA.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package edu.ucla.cs.scai.clubsp.worker;
+
+import edu.ucla.cs.scai.clubsp.commons.BestSplitResult;
+import edu.ucla.cs.scai.clubsp.commons.MarginalDistribution;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Giuseppe M. Mazzeo <mazzeo@cs.ucla.edu>
+ */
+public class WorkerClusterBlockTest {
+
+    //the restructured scan must find the same split, with a bitwise identical SSQ reduction
+    private static void assertSameBestSplit(WorkerClusterBlock block) {
+        for (int d = 0; d < block.dimensionality; d++) {
+            BestSplitResult expected = ReferenceBestSplit.computeBestSplit(block.getGlobalMarginals(d), block.globalN, block.globalLS, block.getR().inf[d]);
+            BestSplitResult actual = block.computeBestSplit(d);
+            assertEquals(expected.getPosition(), actual.getPosition());
+            assertEquals(Double.doubleToLongBits(expected.getDeltaSSQ()), Double.doubleToLongBits(actual.getDeltaSSQ()));
+        }
+    }
+
+    @Test
+    public void bestSplitMatchesReferenceScan() {
+        Random random = new Random(1);
+        for (int dimensionality : new int[]{1, 2, 3, 8, 17}) {
+            WorkerClusterBlock root = ReferenceBestSplit.createRoot(random, 5000, dimensionality, 1000, 4);
+            assertSameBestSplit(root);
+        }
+    }
+
+    @Test
+    public void bestSplitMatchesReferenceScanOnSparseMarginals() {
+        Random random = new Random(2);
+        WorkerClusterBlock root = ReferenceBestSplit.createRoot(random, 200, 4, 1000000, 3);
+        assertTrue(root.getGlobalMarginals(0).isSparse());
+        assertSameBestSplit(root);
+    }
+
+    @Test
+    public void bestSplitMatchesReferenceScanOnChildren() {
+        Random random = new Random(3);
+        WorkerClusterBlock root = ReferenceBestSplit.createRoot(random, 5000, 3, 1000, 5);
+        BestSplitResult split = root.computeBestSplit(0);
+        WorkerClusterBlock[] children = root.split(0, split.getPosition(), 1, 2);
+        for (WorkerClusterBlock child : children) {
+            double[] globalLS = new double[child.dimensionality];
+            for (int k = 0; k < globalLS.length; k++) {
+                globalLS[k] = child.getLocalLS()[k];
+            }
+            child.setGlobalStatistics(child.getLocalN(), globalLS, new double[globalLS.length]);
+            assertSameBestSplit(child);
+        }
+    }
+
+    //the approximate best split of a block as computed with a single worker
+    private static BestSplitResult approximateBestSplit(WorkerClusterBlock block, int dimension) {
+        ApproximateSplit split = block.startApproximateBestSplit(dimension, 1);
+        MarginalDistribution[] windows = block.getLocalMarginalWindows(dimension, split.getBegin(), split.getEnd());
+        assertTrue(block.addApproximateSplitWindows(dimension, windows));
+        return block.completeApproximateBestSplit(dimension);
+    }
+
+    @Test
+    public void approximateBestSplitMatchesTheExactOne() {
+        for (int seed = 10; seed < 20; seed++) {
+            WorkerClusterBlock exact = ReferenceBestSplit.createRoot(new Random(seed), 20000, 3, 100000, 3);
+            WorkerClusterBlock approximate = ReferenceBestSplit.createRoot(new Random(seed), 20000, 3, 100000, 3);
+            approximate.setApproximateWidth(64);
+            for (int d = 0; d < 3; d++) {
+                assertTrue(approximate.isBestSplitApproximated(d));
+                assertTrue(approximate.getGlobalMarginals(d).getWidth() <= 64);
+                BestSplitResult expected = exact.computeBestSplit(d);
+                BestSplitResult actual = approximateBestSplit(approximate, d);
+                assertEquals(expected.getPosition(), actual.getPosition());
+                assertEquals(Double.doubleToLongBits(expected.getDeltaSSQ()), Double.doubleToLongBits(actual.getDeltaSSQ()));
+            }
+        }
+    }
+
+    @Test
+    public void approximateBestSplitIsNeverBetterThanTheExactOne() {
+        //with many small clusters the approximation can miss the best split, but its candidates must be evaluated exactly
+        Random random = new Random(4);
+        for (int round = 0; round < 10; round++) {
+            long seed = random.nextLong();
+            WorkerClusterBlock exact = ReferenceBestSplit.createRoot(new Random(seed), 3000, 2, 50000, 30);
+            WorkerClusterBlock approximate = ReferenceBestSplit.createRoot(new Random(seed), 3000, 2, 50000, 30);
+            approximate.setApproximateWidth(64);
+            for (int d = 0; d < 2; d++) {
+                BestSplitResult expected = exact.computeBestSplit(d);
+                BestSplitResult actual = approximateBestSplit(approximate, d);
+                assertTrue(actual.getDeltaSSQ() <= expected.getDeltaSSQ());
+                assertTrue(actual.getPosition() >= 0 && actual.getPosition() < 50000 - 1);
+                //the reduction of the chosen split is the exact one at that position
+                assertEquals(Double.doubleToLongBits(actual.getDeltaSSQ()), Double.doubleToLongBits(deltaSSQAt(exact, d, actual.getPosition())));
+            }
+        }
+    }
+
+    @Test
+    public void narrowDomainsAreNotApproximated() {
+        WorkerClusterBlock block = ReferenceBestSplit.createRoot(new Random(5), 1000, 2, 64, 2);
+        block.setApproximateWidth(64);
+        assertFalse(block.isBestSplitApproximated(0));
+        assertSameBestSplit(block);
+    }
+
+    //the SSQ reduction of the split after the given position, computed with the original scan
+    private static double deltaSSQAt(WorkerClusterBlock block, int dimension, int position) {
+        MarginalDistribution m = block.getGlobalMarginals(dimension);
+        int last = position - block.getR().inf[dimension];
+        MarginalDistribution prefix = m.getCopy(0, last);
+        //the split after the last bin of the prefix is the best one on a two-bin marginal made of the prefix and the rest
+        MarginalDistribution twoBins = new MarginalDistribution(2, m.dimensionality);
+        twoBins.count[0] = prefix.getTotalCount();
+        twoBins.count[1] = block.globalN - twoBins.count[0];
+        long[] left = prefix.getTotalSum();
+        for (int k = 0; k < m.dimensionality; k++) {
+            twoBins.sum[k] = left[k];
+            twoBins.sum[m.dimensionality + k] = (long) block.globalLS[k] - left[k];
+        }
+        return ReferenceBestSplit.computeBestSplit(twoBins, block.globalN, block.globalLS, 0).getDeltaSSQ();
+    }
+}